@@ -0,0 +1,319 @@
+package com.example.calculatorapp;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CalculatorMetrics counts what the calculator sessions do: how long each
+ * stage takes, how many calculations end in each error, and how long the
+ * evaluated expressions are. It is shared by all sessions in the JVM.
+ *
+ * Recording is off unless the JVM is started with
+ * -Dcalculator.metrics=true. The switch is a static final, so when it is off
+ * the JIT removes the recording calls entirely. When it is on, every counter
+ * is a LongAdder, which spreads concurrent updates over striped cells instead
+ * of making threads contend on one value; a stage costs two System.nanoTime
+ * calls and two uncontended adds. (Per-thread accumulators would be cheaper
+ * still, but the HTTP service runs every request on a new virtual thread.)
+ *
+ * Latencies and lengths go into log-linear histograms: four buckets per power
+ * of two, so a percentile read from them is at most 25% above the true value.
+ */
+public final class CalculatorMetrics {
+
+	/** Whether recording is on (-Dcalculator.metrics=true). */
+	public static final boolean ENABLED = Boolean.getBoolean("calculator.metrics");
+
+	/** A keystroke in CalculatorLogic.press, including the stages it runs. */
+	public static final int INPUT = 0;
+	/** Classifying a syntax error with CalculatorValidator.validate. */
+	public static final int VALIDATE = 1;
+	/** Computing the result of "=" (reading, folding and, on the full parser path, formatting). */
+	public static final int EVALUATE = 2;
+	/** Formatting a result that was computed as a double. */
+	public static final int FORMAT = 3;
+
+	private static final String[] STAGE_NAMES = { "input", "validate", "evaluate", "format" };
+
+	/** A calculation with a numeric result. */
+	public static final int OK = 0;
+	/** A calculation that ended in {@link CalculatorError#MATH_ERROR}. */
+	public static final int MATH_ERROR = 1;
+	/** A calculation that ended in {@link CalculatorError#SYNTAX_ERROR}. */
+	public static final int SYNTAX_ERROR = 2;
+
+	private static final int SUB_BUCKET_BITS = 2; // 4 buckets per power of two
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS;
+	private static final int SYNTAX_ERROR_KINDS = 9; // CalculatorValidator codes, VALID to INVALID_TREE_SYNTAX
+
+	private static final Histogram[] stages = new Histogram[STAGE_NAMES.length];
+	private static final Histogram lengths = new Histogram(); // Characters in each evaluated expression
+	private static final LongAdder[] outcomes = adders(3);
+	private static final LongAdder[] syntaxErrors = adders(SYNTAX_ERROR_KINDS);
+
+	static {
+		for (int i = 0; i < stages.length; i++) {
+			stages[i] = new Histogram();
+		}
+	}
+
+	private CalculatorMetrics() {
+	}
+
+	/**
+	 * Starts timing a stage.
+	 *
+	 * @return the value to pass to {@link #record(int, long)}; 0 if recording is
+	 *         off
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Ends timing a stage.
+	 *
+	 * @param stage one of INPUT, VALIDATE, EVALUATE and FORMAT
+	 * @param start what {@link #start()} returned
+	 */
+	public static void record(int stage, long start) {
+		if (ENABLED) {
+			stages[stage].add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Counts a finished calculation.
+	 *
+	 * @param outcome one of OK, MATH_ERROR and SYNTAX_ERROR
+	 * @param length  length of the evaluated expression
+	 */
+	public static void recordOutcome(int outcome, int length) {
+		if (ENABLED) {
+			outcomes[outcome].increment();
+			lengths.add(length);
+		}
+	}
+
+	/**
+	 * Counts a syntax error by its kind.
+	 *
+	 * @param code a CalculatorValidator error code
+	 */
+	public static void recordSyntaxError(int code) {
+		if (ENABLED) {
+			syntaxErrors[code].increment();
+		}
+	}
+
+	/**
+	 * @return a copy of everything recorded so far
+	 */
+	public static Snapshot snapshot() {
+		Snapshot snapshot = new Snapshot();
+		for (int i = 0; i < stages.length; i++) {
+			snapshot.stages[i] = stages[i].snapshot();
+		}
+		snapshot.lengths = lengths.snapshot();
+		for (int i = 0; i < outcomes.length; i++) {
+			snapshot.outcomes[i] = outcomes[i].sum();
+		}
+		for (int i = 0; i < syntaxErrors.length; i++) {
+			snapshot.syntaxErrors[i] = syntaxErrors[i].sum();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Sets every counter back to 0. Updates that happen at the same time may be
+	 * kept or lost.
+	 */
+	public static void reset() {
+		for (Histogram stage : stages) {
+			stage.reset();
+		}
+		lengths.reset();
+		for (LongAdder outcome : outcomes) {
+			outcome.reset();
+		}
+		for (LongAdder syntaxError : syntaxErrors) {
+			syntaxError.reset();
+		}
+	}
+
+	/**
+	 * @return the name of a stage, e.g. "evaluate"
+	 */
+	public static String stageName(int stage) {
+		return STAGE_NAMES[stage];
+	}
+
+	/**
+	 * @return how many stages there are; stage numbers go from 0 to this - 1
+	 */
+	public static int stageCount() {
+		return STAGE_NAMES.length;
+	}
+
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * The bucket holding value: values below 4 have one bucket each, larger ones
+	 * are split by their highest bit and the two bits below it.
+	 */
+	static int bucket(long value) {
+		if (value < (1 << SUB_BUCKET_BITS)) {
+			return (int) Math.max(0, value);
+		}
+		int highBit = 63 - Long.numberOfLeadingZeros(value);
+		int shift = highBit - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & ((1 << SUB_BUCKET_BITS) - 1));
+	}
+
+	/**
+	 * The largest value that falls into a bucket.
+	 */
+	static long bucketLimit(int bucket) {
+		if (bucket < (1 << SUB_BUCKET_BITS)) {
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+		long sub = (bucket & ((1 << SUB_BUCKET_BITS) - 1)) | (1 << SUB_BUCKET_BITS);
+		long limit = ((sub + 1) << shift) - 1;
+		return limit < 0 ? Long.MAX_VALUE : limit; // The last bucket reaches past Long.MAX_VALUE
+	}
+
+	/**
+	 * A sum and a log-linear histogram, both striped. The count is the sum of the
+	 * buckets.
+	 */
+	private static class Histogram {
+		final LongAdder sum = new LongAdder();
+		final LongAdder[] buckets = adders(BUCKETS);
+
+		void add(long value) {
+			sum.add(value);
+			buckets[bucket(value)].increment();
+		}
+
+		Distribution snapshot() {
+			Distribution distribution = new Distribution();
+			distribution.sum = sum.sum();
+			distribution.buckets = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				distribution.buckets[i] = buckets[i].sum();
+				distribution.count += distribution.buckets[i];
+			}
+			return distribution;
+		}
+
+		void reset() {
+			sum.reset();
+			for (LongAdder bucket : buckets) {
+				bucket.reset();
+			}
+		}
+	}
+
+	/**
+	 * A copy of one histogram: nanoseconds for a stage, characters for expression
+	 * lengths.
+	 */
+	public static class Distribution {
+		long count;
+		long sum;
+		long[] buckets;
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return the mean, or 0 if nothing was recorded
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param fraction e.g. 0.99 for the 99th percentile
+		 * @return the upper limit of the bucket holding that percentile, or 0 if
+		 *         nothing was recorded
+		 */
+		public long getPercentile(double fraction) {
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return bucketLimit(i);
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Everything recorded up to one moment, see {@link CalculatorMetrics#snapshot()}.
+	 */
+	public static class Snapshot {
+		final Distribution[] stages = new Distribution[STAGE_NAMES.length];
+		Distribution lengths;
+		final long[] outcomes = new long[3];
+		final long[] syntaxErrors = new long[SYNTAX_ERROR_KINDS];
+
+		/**
+		 * @param stage one of INPUT, VALIDATE, EVALUATE and FORMAT
+		 * @return its latencies in nanoseconds
+		 */
+		public Distribution getStage(int stage) {
+			return stages[stage];
+		}
+
+		/**
+		 * @return the lengths of the evaluated expressions
+		 */
+		public Distribution getLengths() {
+			return lengths;
+		}
+
+		/**
+		 * @param outcome one of OK, MATH_ERROR and SYNTAX_ERROR
+		 * @return how many calculations ended that way
+		 */
+		public long getOutcomes(int outcome) {
+			return outcomes[outcome];
+		}
+
+		/**
+		 * @param code a CalculatorValidator error code
+		 * @return how many syntax errors were of that kind
+		 */
+		public long getSyntaxErrors(int code) {
+			return syntaxErrors[code];
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder("CalculatorMetrics[");
+			for (int i = 0; i < stages.length; i++) {
+				Distribution stage = stages[i];
+				out.append(STAGE_NAMES[i]).append(": n=").append(stage.count)
+						.append(String.format(" mean=%.0fns p99<=%dns, ", stage.getMean(), stage.getPercentile(0.99)));
+			}
+			out.append("ok=").append(outcomes[OK]).append(", mathErrors=").append(outcomes[MATH_ERROR])
+					.append(", syntaxErrors=").append(outcomes[SYNTAX_ERROR])
+					.append(String.format(", length mean=%.1f p99<=%d]", lengths.getMean(), lengths.getPercentile(0.99)));
+			return out.toString();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.example.calculatorapp;
+
+/**
+ * DisplayListener is told how the calculator display changes, one edit at a
+ * time, so that a front end can edit its text control in place instead of
+ * replacing the whole text after every keystroke. Applying every call, in
+ * order, to the text returned by {@link CalculatorLogic#getDisplay()} when the
+ * listener was set keeps the two equal.
+ *
+ * CharSequence arguments may be the session's own buffer and are only valid
+ * during the call; copy them to keep them.
+ */
+public interface DisplayListener {
+
+	/**
+	 * Text was added at the end of the display.
+	 */
+	void onAppend(CharSequence text);
+
+	/**
+	 * The last count characters of the display were removed.
+	 */
+	void onDeleteTail(int count);
+
+	/**
+	 * The characters in [start, end) were replaced by text.
+	 */
+	void onReplace(int start, int end, CharSequence text);
+
+	/**
+	 * "=" (or "+/-" on something that is not a number) produced a result.
+	 *
+	 * @param result the formatted result, or an error message
+	 * @param error  if true, the display now shows only the error message;
+	 *               otherwise " = " and the result were added at its end
+	 */
+	void onResult(String result, boolean error);
+}
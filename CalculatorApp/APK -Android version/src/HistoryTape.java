@@ -0,0 +1,489 @@
+package com.example.calculatorapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HistoryTape is an append-only log of every calculation: expression, result
+ * and time. It is written through memory-mapped segment files in a directory;
+ * when a segment is full a new one is started, and nothing is ever rewritten.
+ *
+ * Each segment starts with an 8-byte header (a magic number and the end of its
+ * data) followed by records:
+ *
+ * <pre>
+ * int length | long timestamp | int n | n bytes expression (UTF-8)
+ *            | short m | m bytes result (UTF-8) | int length
+ * </pre>
+ *
+ * The length at the end of each record lets readers walk the tape backwards,
+ * newest first, straight from the mapped files, so queries never load the log
+ * on the heap. Appends are thread-safe and can run alongside readers.
+ *
+ * Writes reach the file when the OS flushes the mapped pages, or at
+ * {@link #flush()} / {@link #close()}. A record cut short by a crash is
+ * dropped when the tape is opened again; a new segment's header is forced to
+ * disk before any record goes into it.
+ *
+ * Sessions record through {@link #record(CharSequence, String)}, which does not
+ * throw: a calculation that cannot be appended is counted and reported to the
+ * {@link FailureListener}, so the host can raise an alarm about the gap.
+ */
+public class HistoryTape implements Closeable {
+
+	private static final int MAGIC = 0x43544150; // "CTAP"
+	private static final int HEADER_BYTES = 8; // Magic, end of data
+	private static final int END_OFFSET = 4;
+	private static final int RECORD_OVERHEAD = 4 + 8 + 4 + 2 + 4;
+	private static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+	private static final String PREFIX = "tape-";
+	private static final String SUFFIX = ".seg";
+
+	private final File directory;
+	private final int segmentBytes;
+
+	private final List<File> sealed = new ArrayList<>(); // Full segments, oldest first
+	private File activeFile;
+	private long activeSequence;
+	private MappedByteBuffer active;
+	private volatile int activeEnd; // Readers see the records before this position
+	private boolean closed = false; // Guarded by this
+	private final AtomicLong failedAppends = new AtomicLong();
+	private volatile FailureListener failureListener = null; // May be null
+
+	/**
+	 * Opens the tape in a directory, creating it if needed, with 64 MB segments.
+	 */
+	public HistoryTape(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param directory    where the segment files are kept
+	 * @param segmentBytes size of each segment file
+	 */
+	public HistoryTape(File directory, int segmentBytes) throws IOException {
+		if (segmentBytes < HEADER_BYTES + RECORD_OVERHEAD) {
+			throw new IllegalArgumentException("segmentBytes is too small");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		Arrays.sort(files); // Sequence numbers are zero-padded, so names sort in order
+		if (files.length == 0) {
+			startSegment(1, segmentBytes);
+		} else {
+			for (int i = 0; i < files.length - 1; i++) {
+				sealed.add(files[i]);
+			}
+			openActive(files[files.length - 1]);
+		}
+	}
+
+	/**
+	 * Told about every calculation that {@link HistoryTape#record} could not put on
+	 * the tape.
+	 */
+	public interface FailureListener {
+		/**
+		 * Called on the calculating thread; should return quickly.
+		 *
+		 * @param error why the append failed: an {@link UncheckedIOException} if
+		 *              the disk failed, an {@link IllegalStateException} if the tape
+		 *              is closed
+		 */
+		void appendFailed(CharSequence expression, String result, RuntimeException error);
+	}
+
+	/**
+	 * @param listener told about every failed {@link #record}, or null
+	 */
+	public void setFailureListener(FailureListener listener) {
+		failureListener = listener;
+	}
+
+	/**
+	 * @return how many calculations {@link #record} could not put on the tape
+	 */
+	public long getFailedAppends() {
+		return failedAppends.get();
+	}
+
+	/**
+	 * Appends a calculation stamped with the current time, for a caller that has
+	 * to go on without the tape: a failure is counted and reported to the
+	 * failure listener instead of thrown. Every call tries again, so the tape
+	 * has no more gaps than the failures counted.
+	 *
+	 * @return false if the calculation is not on the tape
+	 */
+	public boolean record(CharSequence expression, String result) {
+		try {
+			append(expression, result);
+			return true;
+		} catch (UncheckedIOException | IllegalStateException e) {
+			failedAppends.incrementAndGet();
+			FailureListener listener = failureListener;
+			if (listener != null) {
+				listener.appendFailed(expression, result, e);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Appends a calculation stamped with the current time.
+	 */
+	public void append(CharSequence expression, String result) {
+		append(System.currentTimeMillis(), expression, result);
+	}
+
+	/**
+	 * Appends a calculation.
+	 *
+	 * @param timestamp  milliseconds since the epoch
+	 * @param expression the expression as typed
+	 * @param result     the result or error message shown for it
+	 * @throws UncheckedIOException  if a new segment cannot be created
+	 * @throws IllegalStateException if the tape is closed
+	 */
+	public synchronized void append(long timestamp, CharSequence expression, String result) {
+		if (closed) {
+			throw new IllegalStateException("history tape is closed");
+		}
+		byte[] expressionBytes = isAscii(expression) ? null
+				: expression.toString().getBytes(StandardCharsets.UTF_8);
+		int expressionLength = expressionBytes == null ? expression.length() : expressionBytes.length;
+		byte[] resultBytes = result.getBytes(StandardCharsets.UTF_8);
+		if (resultBytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("result is too long");
+		}
+		int length = RECORD_OVERHEAD + expressionLength + resultBytes.length;
+
+		if (active.capacity() - activeEnd < length) {
+			try {
+				roll(length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		MappedByteBuffer buffer = active;
+		int position = activeEnd;
+		buffer.putInt(position, length);
+		buffer.putLong(position + 4, timestamp);
+		buffer.putInt(position + 12, expressionLength);
+		int at = position + 16;
+		if (expressionBytes == null) {
+			for (int i = 0; i < expressionLength; i++) {
+				buffer.put(at + i, (byte) expression.charAt(i));
+			}
+		} else {
+			for (int i = 0; i < expressionLength; i++) {
+				buffer.put(at + i, expressionBytes[i]);
+			}
+		}
+		at += expressionLength;
+		buffer.putShort(at, (short) resultBytes.length);
+		at += 2;
+		for (int i = 0; i < resultBytes.length; i++) {
+			buffer.put(at + i, resultBytes[i]);
+		}
+		buffer.putInt(position + length - 4, length);
+
+		buffer.putInt(END_OFFSET, position + length);
+		activeEnd = position + length; // Publishes the record to readers
+	}
+
+	/**
+	 * Iterates over all calculations, newest first. Records appended after the
+	 * call are not included.
+	 */
+	public Iterable<Entry> newestFirst() {
+		List<ByteBuffer> segments = snapshot();
+		return () -> new ReverseIterator(segments);
+	}
+
+	/**
+	 * Finds the newest calculations whose expression starts with a prefix. The
+	 * expressions are compared as bytes in the mapped files; only matches are
+	 * decoded.
+	 *
+	 * @param prefix the start of the expression (e.g. "3*")
+	 * @param limit  maximum number of entries returned
+	 * @return the matches, newest first
+	 */
+	public List<Entry> searchPrefix(String prefix, int limit) {
+		byte[] wanted = prefix.getBytes(StandardCharsets.UTF_8);
+		List<Entry> matches = new ArrayList<>();
+		ReverseIterator records = new ReverseIterator(snapshot());
+		while (matches.size() < limit && records.advance()) {
+			ByteBuffer segment = records.segment;
+			int start = records.recordStart;
+			int expressionLength = segment.getInt(start + 12);
+			if (expressionLength < wanted.length) {
+				continue;
+			}
+			boolean match = true;
+			for (int i = 0; i < wanted.length && match; i++) {
+				match = segment.get(start + 16 + i) == wanted[i];
+			}
+			if (match) {
+				matches.add(decode(segment, start));
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Forces the appended records to the storage device.
+	 */
+	public synchronized void flush() {
+		if (!closed) {
+			active.force();
+		}
+	}
+
+	/**
+	 * Forces the appended records to the storage device. Later appends are
+	 * rejected; the tape can still be read.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			active.force();
+			closed = true;
+		}
+	}
+
+	private static boolean isZero(ByteBuffer buffer) {
+		for (int i = 0; i < buffer.capacity(); i++) {
+			if (buffer.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAscii(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= 0x80) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Seals the active segment and starts the next one, large enough for a record
+	 * of the given length.
+	 */
+	private void roll(int recordLength) throws IOException {
+		active.force();
+		sealed.add(activeFile);
+		startSegment(activeSequence + 1, Math.max(segmentBytes, HEADER_BYTES + recordLength));
+	}
+
+	private void startSegment(long sequence, int size) throws IOException {
+		File file = new File(directory, String.format("%s%019d%s", PREFIX, sequence, SUFFIX));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+			active = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		active.putInt(0, MAGIC);
+		active.putInt(END_OFFSET, HEADER_BYTES);
+		active.force(); // Otherwise a crash could leave a segment without a header
+		activeFile = file;
+		activeSequence = sequence;
+		activeEnd = HEADER_BYTES;
+	}
+
+	/**
+	 * Maps the newest segment for appending. The header's end is written after
+	 * each record, so at most a record cut short by a crash lies beyond it; any
+	 * complete ones are recovered by checking their lengths. A segment that is
+	 * still all zeros was being started by a crash before it held anything, and
+	 * is started again.
+	 */
+	private void openActive(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			active = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		}
+		String name = file.getName();
+		long sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		if (isZero(active)) {
+			startSegment(sequence, Math.max(segmentBytes, active.capacity()));
+			return;
+		}
+		if (active.capacity() < HEADER_BYTES || active.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a history segment");
+		}
+		activeSequence = sequence;
+		activeFile = file;
+
+		int end = active.getInt(END_OFFSET);
+		while (end + RECORD_OVERHEAD <= active.capacity()) {
+			int length = active.getInt(end);
+			if (length < RECORD_OVERHEAD || length > active.capacity() - end
+					|| active.getInt(end + length - 4) != length) {
+				break;
+			}
+			end += length;
+		}
+		active.putInt(END_OFFSET, end);
+		activeEnd = end;
+	}
+
+	/**
+	 * Read-only views of every segment, oldest first, each limited to its data.
+	 */
+	private List<ByteBuffer> snapshot() {
+		List<File> files;
+		ByteBuffer current;
+		synchronized (this) {
+			files = new ArrayList<>(sealed);
+			current = active.duplicate();
+			current.limit(activeEnd);
+		}
+
+		List<ByteBuffer> segments = new ArrayList<>(files.size() + 1);
+		for (File file : files) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				ByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				segment.limit(segment.getInt(END_OFFSET));
+				segments.add(segment);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		segments.add(current);
+		return segments;
+	}
+
+	private static Entry decode(ByteBuffer segment, int start) {
+		long timestamp = segment.getLong(start + 4);
+		int expressionLength = segment.getInt(start + 12);
+		String expression = decodeString(segment, start + 16, expressionLength);
+		int resultAt = start + 16 + expressionLength;
+		String result = decodeString(segment, resultAt + 2, segment.getShort(resultAt));
+		return new Entry(timestamp, expression, result);
+	}
+
+	private static String decodeString(ByteBuffer segment, int at, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = segment.get(at + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Walks the records from the end of the newest segment to the start of the
+	 * oldest, using the length stored at the end of each record.
+	 */
+	private static class ReverseIterator implements Iterator<Entry> {
+		private final List<ByteBuffer> segments;
+		private int segmentIndex;
+		private int position; // End of the next record to visit
+		private boolean ready; // advance() already found the next record
+
+		ByteBuffer segment;
+		int recordStart;
+
+		ReverseIterator(List<ByteBuffer> segments) {
+			this.segments = segments;
+			this.segmentIndex = segments.size() - 1;
+			this.position = segments.get(segmentIndex).limit();
+		}
+
+		/**
+		 * Moves to the next older record.
+		 *
+		 * @return false at the start of the tape
+		 */
+		boolean advance() {
+			if (ready) {
+				ready = false;
+				return true;
+			}
+			while (position <= HEADER_BYTES) {
+				if (segmentIndex == 0) {
+					return false;
+				}
+				segmentIndex--;
+				position = segments.get(segmentIndex).limit();
+			}
+			segment = segments.get(segmentIndex);
+			recordStart = position - segment.getInt(position - 4);
+			position = recordStart;
+			return true;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!ready) {
+				ready = advance();
+			}
+			return ready;
+		}
+
+		@Override
+		public Entry next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return decode(segment, recordStart);
+		}
+	}
+
+	/**
+	 * One calculation on the tape.
+	 */
+	public static final class Entry {
+		private final long timestamp;
+		private final String expression;
+		private final String result;
+
+		Entry(long timestamp, String expression, String result) {
+			this.timestamp = timestamp;
+			this.expression = expression;
+			this.result = result;
+		}
+
+		/** @return milliseconds since the epoch */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getExpression() {
+			return expression;
+		}
+
+		public String getResult() {
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return expression + " = " + result + " @" + timestamp;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package com.example.calculatorapp;
 
 import android.os.Bundle;
+import android.text.Editable;
 import android.widget.Button;
 import android.widget.GridLayout;
 import android.widget.TextView;
@@ -33,6 +34,9 @@ public class MainActivity extends AppCompatActivity {
         // Reference the views from the layout
         buttonGrid = findViewById(R.id.buttonGrid);
         display = findViewById(R.id.displayExpression);
+        // Let the logic edit the display text in place instead of replacing it on every click
+        display.setText(logic.getDisplay(), TextView.BufferType.EDITABLE);
+        logic.setDisplayListener(new DisplayEditor());
         // Dynamically add all calculator buttons
         addButtonsToGrid();
     }
@@ -68,14 +72,42 @@ public class MainActivity extends AppCompatActivity {
             btn.setLayoutParams(params);
 
             // Define click behavior
-            btn.setOnClickListener(v -> {
-                String result = logic.userInput(label);
-                display.setText(result);
-            });
+            btn.setOnClickListener(v -> logic.press(label));
 
             // Add the button to the GridLayout
             buttonGrid.addView(btn);
         }
     }
 
+    /**
+     * Applies the display edits of the logic to the display's Editable, so a click
+     * costs the characters it changes rather than a new copy of the whole display.
+     */
+    private class DisplayEditor implements DisplayListener {
+        @Override
+        public void onAppend(CharSequence text) {
+            display.getEditableText().append(text);
+        }
+
+        @Override
+        public void onDeleteTail(int count) {
+            Editable text = display.getEditableText();
+            text.delete(text.length() - count, text.length());
+        }
+
+        @Override
+        public void onReplace(int start, int end, CharSequence text) {
+            display.getEditableText().replace(start, end, text);
+        }
+
+        @Override
+        public void onResult(String result, boolean error) {
+            Editable text = display.getEditableText();
+            if (error) {
+                text.replace(0, text.length(), result);
+            } else {
+                text.append(" = ").append(result);
+            }
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.example.calculatorapp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ResultCache is an optional, bounded cache of evaluated expressions. It maps an
+ * expression, exactly as typed, to the text that evaluating it produces (a
+ * formatted result or a CalculatorError message), and evicts the least recently
+ * used entries once it holds more than maxEntries expressions or more than
+ * maxChars characters of keys and values.
+ *
+ * One cache can be shared by any number of CalculatorLogic instances; all
+ * methods are thread-safe. A lookup locks only the segment its key hashes to,
+ * so threads sharing a large cache rarely wait for each other. Each segment
+ * holds an equal share of the limits and evicts its own least recently used
+ * entry, so eviction order is least recently used per segment rather than
+ * across the whole cache. Small caches have a single segment and exact order.
+ */
+public class ResultCache {
+
+	private static final int MAX_SEGMENTS = 16; // A power of two
+	private static final int MIN_SEGMENT_ENTRIES = 64; // Fewer entries per segment would make eviction too coarse
+
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxEntries maximum number of cached expressions
+	 * @param maxChars   maximum total length of all cached keys and values
+	 */
+	public ResultCache(int maxEntries, long maxChars) {
+		this(maxEntries, maxChars, defaultSegments(maxEntries));
+	}
+
+	/**
+	 * @param maxEntries maximum number of cached expressions
+	 * @param maxChars   maximum total length of all cached keys and values
+	 * @param segments   number of separately locked segments; a power of two, at
+	 *                   most maxEntries and maxChars
+	 */
+	public ResultCache(int maxEntries, long maxChars, int segments) {
+		if (maxEntries < 1 || maxChars < 1) {
+			throw new IllegalArgumentException("maxEntries and maxChars must be positive");
+		}
+		if (Integer.bitCount(segments) != 1 || segments > maxEntries || segments > maxChars) {
+			throw new IllegalArgumentException("segments must be a power of two, at most maxEntries and maxChars");
+		}
+		this.segments = new Segment[segments];
+		for (int i = 0; i < segments; i++) {
+			// The first segments take the remainder, so the shares add up to the limits
+			this.segments[i] = new Segment(maxEntries / segments + (i < maxEntries % segments ? 1 : 0),
+					maxChars / segments + (i < maxChars % segments ? 1 : 0));
+		}
+	}
+
+	private static int defaultSegments(int maxEntries) {
+		int segments = 1;
+		while (segments < MAX_SEGMENTS && (long) segments * 2 * MIN_SEGMENT_ENTRIES <= maxEntries) {
+			segments *= 2;
+		}
+		return segments;
+	}
+
+	private Segment segmentFor(String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
+
+	/**
+	 * Looks up an expression.
+	 *
+	 * @param key the expression; ignored characters are part of it, since even
+	 *            a space can decide whether a '-' is a sign
+	 * @return the cached result, or null if it is not cached
+	 */
+	public String get(String key) {
+		String result = segmentFor(key).get(key);
+		if (result == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the result of an expression, evicting old entries if its segment
+	 * grows past its share of the limits. Entries larger than that share are not
+	 * stored.
+	 *
+	 * @param key    the expression
+	 * @param result the result or error message for that expression
+	 */
+	public void put(String key, String result) {
+		segmentFor(key).put(key, result);
+	}
+
+	/**
+	 * Removes every entry. The hit and miss statistics are kept.
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		long evictions = 0;
+		for (Segment segment : segments) {
+			evictions += segment.getEvictions();
+		}
+		return evictions;
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 before the first lookup
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long lookups = hitCount + misses.sum();
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	@Override
+	public String toString() {
+		long chars = 0;
+		for (Segment segment : segments) {
+			chars += segment.getChars();
+		}
+		return String.format("ResultCache[entries=%d, chars=%d, hits=%d, misses=%d, evictions=%d, segments=%d]",
+				size(), chars, getHits(), getMisses(), getEvictions(), segments.length);
+	}
+
+	/**
+	 * One share of the cache, with its own lock and least recently used order.
+	 */
+	private static class Segment {
+		private final int maxEntries;
+		private final long maxChars;
+
+		// Access-ordered, so the first entry is always the least recently used
+		private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private long chars = 0;
+		private long evictions = 0;
+
+		Segment(int maxEntries, long maxChars) {
+			this.maxEntries = maxEntries;
+			this.maxChars = maxChars;
+		}
+
+		synchronized String get(String key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(String key, String result) {
+			long size = (long) key.length() + result.length();
+			if (size > maxChars) {
+				return;
+			}
+
+			String previous = entries.put(key, result);
+			if (previous != null) {
+				chars -= key.length() + previous.length();
+			}
+			chars += size;
+
+			Iterator<Map.Entry<String, String>> eldest = entries.entrySet().iterator();
+			while (entries.size() > maxEntries || chars > maxChars) {
+				Map.Entry<String, String> entry = eldest.next();
+				chars -= entry.getKey().length() + entry.getValue().length();
+				eldest.remove();
+				evictions++;
+			}
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			chars = 0;
+		}
+
+		synchronized int size() {
+			return entries.size();
+		}
+
+		synchronized long getChars() {
+			return chars;
+		}
+
+		synchronized long getEvictions() {
+			return evictions;
+		}
+	}
+}
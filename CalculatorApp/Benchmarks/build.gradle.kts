@@ -0,0 +1,42 @@
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+// The engine classes are shared by both apps. JMH does not accept benchmarks in
+// the default package, so the packaged (Android) copy is compiled here; it is
+// identical to the desktop copy apart from the package line.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../APK -Android version/src"))
+            exclude("MainActivity.java")
+        }
+    }
+}
+
+// The sources hold non-ASCII characters (e.g. en dashes), so they are read as
+// UTF-8 whatever the platform's default.
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    jmhVersion = "1.37"
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    // Narrow a run with e.g. ./gradlew jmh -Pinclude=Evaluate
+    if (project.hasProperty("include")) {
+        includes = listOf(project.property("include").toString())
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.calculatorapp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the hot paths of CalculatorLogic, from a 3-term expression up
+ * to 100k terms. Run with ./gradlew jmh (the GC profiler is enabled in the
+ * build, so allocation rates are reported next to the timings).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+	@Param({ "3", "100", "10000", "100000" })
+	private int terms;
+
+	private String expression; // e.g. "12+7*3-45/9"
+	private String[] keystrokes; // The same expression as button presses
+	private double[] numbers; // The expression already tokenized
+	private char[] operators;
+	private double[] numbersWork; // Copies handed to applyPrecedence, which folds in place
+	private char[] operatorsWork;
+	private double formatValue;
+	private final ResultFormatter formatter = new ResultFormatter(3);
+	private final StringBuilder formatBuffer = new StringBuilder();
+
+	private final Evaluator evaluator = new Evaluator();
+	private final ExactEvaluator exactEvaluator = new ExactEvaluator();
+	private CalculatorLogic logic;
+	private CalculatorLogic toggleLogic;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		char[] ops = { '+', '-', '*', '/' };
+
+		StringBuilder sb = new StringBuilder();
+		keystrokes = new String[terms * 2 - 1];
+		numbers = new double[terms];
+		operators = new char[terms - 1];
+		int keys = 0;
+
+		for (int i = 0; i < terms; i++) {
+			if (i > 0) {
+				char op = ops[random.nextInt(ops.length)];
+				operators[i - 1] = op;
+				sb.append(op);
+				keystrokes[keys++] = String.valueOf(op);
+			}
+			int value = 1 + random.nextInt(99); // Never 0, so there is no division by zero
+			numbers[i] = value;
+			sb.append(value);
+			keystrokes[keys++] = String.valueOf(value);
+		}
+
+		expression = sb.toString();
+		numbersWork = new double[numbers.length];
+		operatorsWork = new char[operators.length];
+		formatValue = random.nextDouble() * 1_000_000;
+
+		logic = new CalculatorLogic();
+		toggleLogic = new CalculatorLogic();
+		for (String key : keystrokes) {
+			toggleLogic.press(key);
+		}
+		// End on "+7" so that "+/-" always has a whole number to flip back and forth
+		toggleLogic.press("+");
+		toggleLogic.press("7");
+	}
+
+	/**
+	 * Types the whole expression one button at a time, then presses "=", the way
+	 * a front end with a display listener does: only the edits, no display
+	 * string per key.
+	 */
+	@Benchmark
+	public String pressKeystrokes() {
+		logic.press("C");
+		for (String key : keystrokes) {
+			logic.press(key);
+		}
+		logic.press("=");
+		return logic.getDisplay();
+	}
+
+	/**
+	 * Like {@link #pressKeystrokes()}, but builds the whole display string after
+	 * every key, as userInput does. That copy grows with the expression, so this
+	 * is quadratic in the number of terms.
+	 */
+	@Benchmark
+	public String userInputKeystrokes() {
+		logic.userInput("C");
+		for (String key : keystrokes) {
+			logic.userInput(key);
+		}
+		return logic.userInput("=");
+	}
+
+	/** Evaluates a full expression through a calculator session. */
+	@Benchmark
+	public String parseAndEvaluate() {
+		return logic.evaluate(expression);
+	}
+
+	/** Evaluates a full expression through the shared, stateless Evaluator. */
+	@Benchmark
+	public String evaluatorEvaluate() {
+		return evaluator.evaluate(expression);
+	}
+
+	/** Evaluates a full expression exactly (double path, BigDecimal when needed). */
+	@Benchmark
+	public String exactEvaluatorEvaluate() {
+		return exactEvaluator.evaluate(expression);
+	}
+
+	/** Evaluates an already tokenized expression (applyMulDiv + the additive pass). */
+	@Benchmark
+	public String applyPrecedence() {
+		System.arraycopy(numbers, 0, numbersWork, 0, numbers.length);
+		System.arraycopy(operators, 0, operatorsWork, 0, operators.length);
+		return logic.applyPrecedence(numbersWork, numbersWork.length, operatorsWork, operatorsWork.length);
+	}
+
+	/** Toggles the sign of the last number of the expression (the "+/-" button). */
+	@Benchmark
+	public void toggleSign() {
+		toggleLogic.press("+/-");
+	}
+
+	/** Like {@link #toggleSign()}, plus building the whole display string. */
+	@Benchmark
+	public String toggleSignUserInput() {
+		return toggleLogic.userInput("+/-");
+	}
+
+	/** Formats a result the way the display used to, for comparison. */
+	@Benchmark
+	public String formatResultStringFormat() {
+		return String.format("%.3f", formatValue);
+	}
+
+	/** Formats a result the way the display shows it, into a reused buffer. */
+	@Benchmark
+	public StringBuilder formatResult() {
+		formatBuffer.setLength(0);
+		return formatter.format(formatValue, formatBuffer);
+	}
+}
@@ -0,0 +1,228 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * AsyncCalculator runs a calculator session on its own worker thread, so that
+ * the thread handling key presses never waits for an evaluation.
+ *
+ * Keystrokes are applied to the session one at a time, in the order they were
+ * submitted, and each gets a sequence number. The display edits they make are
+ * collected and handed to the display listener through the given executor
+ * (Platform::runLater for JavaFX). Edits made while a hand-over is still
+ * waiting join it, so however far the display falls behind, it catches up to
+ * the latest keystroke in one go and never shows the states in between.
+ *
+ * "C" throws away everything it would clear anyway: keystrokes still queued
+ * are dropped and an evaluation in progress is interrupted (see
+ * {@link Evaluator#evaluate(CharSequence)}). {@link #cancel()} does the same
+ * without clearing, for a user who would rather not wait for a result.
+ *
+ * {@link #submit(String)}, {@link #cancel()} and {@link #isComputing()} are
+ * meant to be used from the publishing thread, which is also the thread the
+ * listener is called on.
+ */
+public class AsyncCalculator implements AutoCloseable {
+
+	private final CalculatorLogic logic; // Only touched by the worker thread
+	private final ExecutorService worker;
+	private final Executor publisher;
+	private final DisplayListener display; // Called on the publishing thread
+	private final Deque<Future<?>> queued = new ArrayDeque<>(); // Keystrokes that may not have finished yet
+
+	private long submitted = 0; // Sequence number of the latest keystroke
+	private long published = 0; // Sequence number of the latest keystroke whose edits were applied
+
+	// Edits made by the worker and not yet handed over; guarded by this
+	private List<Edit> edits = new ArrayList<>();
+	private long editsSequence = 0; // Latest keystroke whose edits are in edits
+	private boolean handOverScheduled = false;
+
+	/**
+	 * @param logic     the session; must not be used by anyone else afterwards
+	 * @param display   receives the display edits, on the publishing thread
+	 * @param publisher runs the hand-overs, e.g. Platform::runLater
+	 */
+	public AsyncCalculator(CalculatorLogic logic, DisplayListener display, Executor publisher) {
+		if (logic == null || display == null || publisher == null) {
+			throw new IllegalArgumentException("logic, display and publisher must not be null");
+		}
+		this.logic = logic;
+		this.display = display;
+		this.publisher = publisher;
+		this.worker = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "calculator-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		logic.setDisplayListener(new Recorder());
+	}
+
+	/**
+	 * Queues a keystroke. Returns at once.
+	 *
+	 * @param text the button label that was clicked
+	 * @return the keystroke's sequence number
+	 */
+	public long submit(String text) {
+		long sequence = ++submitted;
+		if (text.equals("C")) {
+			cancelQueued();
+		} else {
+			queued.removeIf(Future::isDone);
+		}
+
+		queued.add(worker.submit(() -> {
+			try {
+				logic.press(text);
+			} catch (CancellationException e) {
+				// A "C" is queued behind this keystroke and resets the session
+			}
+			finished(sequence);
+		}));
+		return sequence;
+	}
+
+	/**
+	 * Abandons the keystrokes the worker has not finished: queued ones are dropped
+	 * and an evaluation in progress is interrupted, so "=" leaves the expression
+	 * as it was. Edits of keystrokes that did finish are still shown, and
+	 * {@link #isComputing()} turns false once the worker has stopped.
+	 */
+	public void cancel() {
+		cancelQueued();
+		long sequence = submitted;
+		queued.add(worker.submit(() -> finished(sequence))); // Runs after the interrupted keystroke gives up
+	}
+
+	/**
+	 * @return whether the edits of the latest keystroke are still being computed
+	 */
+	public boolean isComputing() {
+		return published != submitted;
+	}
+
+	/**
+	 * Stops the worker thread. Queued keystrokes are dropped.
+	 */
+	@Override
+	public void close() {
+		cancelQueued();
+		worker.shutdownNow();
+	}
+
+	private void cancelQueued() {
+		for (Future<?> keystroke : queued) {
+			keystroke.cancel(true);
+		}
+		queued.clear();
+	}
+
+	/**
+	 * On the worker thread: a keystroke is done, so its edits can be shown.
+	 */
+	private void finished(long sequence) {
+		synchronized (this) {
+			editsSequence = sequence;
+			if (handOverScheduled) {
+				return; // The waiting hand-over will take these edits too
+			}
+			handOverScheduled = true;
+		}
+		publisher.execute(this::handOver);
+	}
+
+	/**
+	 * On the publishing thread: applies every edit made since the last hand-over.
+	 */
+	private void handOver() {
+		List<Edit> ready;
+		long sequence;
+		synchronized (this) {
+			ready = edits;
+			sequence = editsSequence;
+			edits = new ArrayList<>();
+			handOverScheduled = false;
+		}
+		for (Edit edit : ready) {
+			edit.applyTo(display);
+		}
+		published = sequence;
+	}
+
+	private synchronized void record(Edit edit) {
+		edits.add(edit);
+	}
+
+	/**
+	 * One display edit, kept until it is handed over.
+	 */
+	private static class Edit {
+		static final int APPEND = 0;
+		static final int DELETE_TAIL = 1;
+		static final int REPLACE = 2;
+		static final int RESULT = 3;
+
+		final int kind;
+		final int start; // Count for DELETE_TAIL
+		final int end;
+		final String text;
+		final boolean error;
+
+		Edit(int kind, int start, int end, String text, boolean error) {
+			this.kind = kind;
+			this.start = start;
+			this.end = end;
+			this.text = text;
+			this.error = error;
+		}
+
+		void applyTo(DisplayListener display) {
+			switch (kind) {
+			case APPEND:
+				display.onAppend(text);
+				break;
+			case DELETE_TAIL:
+				display.onDeleteTail(start);
+				break;
+			case REPLACE:
+				display.onReplace(start, end, text);
+				break;
+			default:
+				display.onResult(text, error);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Listens to the session on the worker thread and keeps its edits.
+	 */
+	private class Recorder implements DisplayListener {
+		@Override
+		public void onAppend(CharSequence text) {
+			record(new Edit(Edit.APPEND, 0, 0, text.toString(), false));
+		}
+
+		@Override
+		public void onDeleteTail(int count) {
+			record(new Edit(Edit.DELETE_TAIL, count, 0, null, false));
+		}
+
+		@Override
+		public void onReplace(int start, int end, CharSequence text) {
+			record(new Edit(Edit.REPLACE, start, end, text.toString(), false));
+		}
+
+		@Override
+		public void onResult(String result, boolean error) {
+			record(new Edit(Edit.RESULT, 0, 0, result, error));
+		}
+	}
+}
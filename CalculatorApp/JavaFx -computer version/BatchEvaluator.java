@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BatchEvaluator is a headless entry point that evaluates a file of
+ * expressions, one per line, and writes one result per line in the same order.
+ *
+ * The input is memory-mapped in chunks that end on a line break. Each chunk is
+ * evaluated by a worker thread (all sharing one thread-safe Evaluator), and the
+ * finished chunks are written out in the order they were read.
+ *
+ * Each chunk is one batch for a {@link BatchOptimizer}, so a line that repeats
+ * within a chunk is evaluated only once, and a term that repeats is folded only
+ * once. Pass -Dcalculator.batchOptimizer=false to evaluate every line from
+ * scratch.
+ *
+ * Usage: java BatchEvaluator &lt;input&gt; &lt;output&gt; [threads] [chunkBytes]
+ * [cacheEntries]
+ */
+public class BatchEvaluator {
+
+	private static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+
+	private final int threads;
+	private final int chunkBytes;
+	private final Evaluator evaluator; // Shared by all workers
+
+	private final ThreadLocal<StringBuilder> lines = ThreadLocal.withInitial(StringBuilder::new);
+	private final ThreadLocal<BatchOptimizer> optimizers; // null if switched off
+
+	/**
+	 * @param threads    number of worker threads (at least 1)
+	 * @param chunkBytes preferred size of each mapped chunk in bytes
+	 * @param evaluator  evaluator shared by the workers
+	 */
+	public BatchEvaluator(int threads, int chunkBytes, Evaluator evaluator) {
+		if (threads < 1 || chunkBytes < 1) {
+			throw new IllegalArgumentException("threads and chunkBytes must be positive");
+		}
+		this.threads = threads;
+		this.chunkBytes = chunkBytes;
+		this.evaluator = evaluator;
+		boolean optimize = !"false".equals(System.getProperty("calculator.batchOptimizer"));
+		this.optimizers = optimize ? ThreadLocal.withInitial(() -> new BatchOptimizer(evaluator)) : null;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: java BatchEvaluator <input> <output> [threads] [chunkBytes] [cacheEntries]");
+			System.exit(2);
+		}
+
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int chunkBytes = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CHUNK_BYTES;
+		int cacheEntries = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+		ResultCache cache = cacheEntries > 0 ? new ResultCache(cacheEntries, cacheEntries * 64L) : null;
+
+		long start = System.nanoTime();
+		Evaluator evaluator = new Evaluator(new ResultFormatter(3), cache);
+		long count = new BatchEvaluator(threads, chunkBytes, evaluator).run(Paths.get(args[0]), Paths.get(args[1]));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("Evaluated %d expressions in %.3f s (%.0f per second)%n", count, seconds,
+				count / Math.max(seconds, 1e-9));
+		if (cache != null) {
+			System.err.println(cache);
+		}
+	}
+
+	/**
+	 * Evaluates every line of the input file and writes the results to the output
+	 * file.
+	 *
+	 * @param input  file with one expression per line
+	 * @param output file that receives one result per line (overwritten)
+	 * @return number of expressions evaluated
+	 */
+	public long run(Path input, Path output) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// Bounded so that the reader never gets far ahead of the writer
+		ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+		int maxInFlight = threads * 4;
+		long count = 0;
+
+		try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+
+			while (position < size) {
+				MappedByteBuffer chunk = mapChunk(in, position, size);
+				position += chunk.limit();
+
+				final ByteBuffer lines = chunk;
+				inFlight.add(pool.submit(new Callable<Chunk>() {
+					@Override
+					public Chunk call() {
+						return evaluateChunk(lines);
+					}
+				}));
+
+				if (inFlight.size() >= maxInFlight) {
+					count += writeChunk(out, inFlight.poll());
+				}
+			}
+
+			while (!inFlight.isEmpty()) {
+				count += writeChunk(out, inFlight.poll());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Maps the next chunk of the input. The chunk always ends just after a line
+	 * break (or at the end of the file), growing past chunkBytes if a single line
+	 * is longer than that.
+	 */
+	private MappedByteBuffer mapChunk(FileChannel in, long position, long size) throws IOException {
+		long length = Math.min(chunkBytes, size - position);
+
+		while (true) {
+			MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+			if (position + length == size) {
+				return buffer;
+			}
+
+			for (int i = (int) length - 1; i >= 0; i--) {
+				if (buffer.get(i) == '\n') {
+					buffer.limit(i + 1);
+					return buffer;
+				}
+			}
+
+			if (length >= Integer.MAX_VALUE) {
+				throw new IOException("Line longer than " + Integer.MAX_VALUE + " bytes at offset " + position);
+			}
+			length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+		}
+	}
+
+	/**
+	 * Evaluates every line of a chunk on the calling worker thread.
+	 */
+	private Chunk evaluateChunk(ByteBuffer buffer) {
+		StringBuilder line = lines.get();
+		BatchOptimizer optimizer = optimizers != null ? optimizers.get() : null;
+		if (optimizer != null) {
+			optimizer.startBatch();
+		}
+		Chunk result = new Chunk(buffer.limit());
+
+		int limit = buffer.limit();
+		int i = 0;
+		while (i < limit) {
+			line.setLength(0);
+			byte b;
+			while (i < limit && (b = buffer.get(i)) != '\n') {
+				line.append((char) (b & 0xFF));
+				i++;
+			}
+			i++; // Skip the line break
+
+			if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+				line.setLength(line.length() - 1);
+			}
+
+			result.append(optimizer != null ? optimizer.evaluate(line) : evaluator.evaluate(line));
+		}
+
+		return result;
+	}
+
+	private long writeChunk(FileChannel out, Future<Chunk> pending) throws IOException, InterruptedException {
+		Chunk chunk;
+		try {
+			chunk = pending.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Evaluation failed", e.getCause());
+		}
+
+		ByteBuffer bytes = ByteBuffer.wrap(chunk.bytes, 0, chunk.length);
+		while (bytes.hasRemaining()) {
+			out.write(bytes);
+		}
+		return chunk.lines;
+	}
+
+	/**
+	 * The encoded results of one chunk, one line per expression.
+	 */
+	private static final class Chunk {
+		private byte[] bytes;
+		private int length = 0;
+		private int lines = 0;
+
+		Chunk(int expectedBytes) {
+			bytes = new byte[Math.max(16, expectedBytes)];
+		}
+
+		void append(String result) {
+			int needed = length + result.length() + 1;
+			if (needed > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+			}
+			// Results are plain ASCII (digits, '.', '-' and the error messages)
+			for (int i = 0; i < result.length(); i++) {
+				bytes[length++] = (byte) result.charAt(i);
+			}
+			bytes[length++] = '\n';
+			lines++;
+		}
+	}
+}
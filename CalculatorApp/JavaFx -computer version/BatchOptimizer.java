@@ -0,0 +1,443 @@
+import java.util.Arrays;
+
+/**
+ * BatchOptimizer evaluates the lines of one batch with an {@link Evaluator},
+ * sharing work between lines at two levels:
+ * <ul>
+ * <li>Lines: each distinct line is computed only once per batch. Every later
+ * occurrence gets the same result string back, without being parsed, folded or
+ * formatted again.</li>
+ * <li>Terms: a line is split at its top-level + and -, and each distinct term
+ * (e.g. "1.0825*688.5/12") is folded to its value once per batch. A line whose
+ * terms were all seen before is just the sum of their values, formatted.</li>
+ * </ul>
+ *
+ * Both are hash-consing tables of text: each distinct line or term of the batch
+ * is stored once and identified by its number. They belong to one thread, so
+ * unlike a shared {@link ResultCache} they need no lock and no key strings, and
+ * they are emptied in constant time for every batch, so their size is bounded
+ * by the batch.
+ *
+ * Terms are only folded for lines of digits, '.', + - * and /; any other line
+ * is handed to the evaluator as a whole. The values and their order of addition
+ * are those of the evaluator, so the results are the same strings. Exact
+ * evaluators, whose terms are not doubles, and evaluators with a cache, which
+ * already shares results across batches, only get the line table.
+ *
+ * Batches without repetition should not pay for the tables. Each table is
+ * looked up in windows of {@link #SAMPLE_LINES} lines; if fewer than one in 32
+ * lines, or fewer than one in four terms, of a window were seen before, that table
+ * is left out for the next fifteen windows' worth of lines before it is tried
+ * again.
+ *
+ * An instance is used by one thread at a time. Call {@link #startBatch()}
+ * before each batch.
+ */
+public class BatchOptimizer {
+
+	/** Lines that are looked up before deciding whether a table pays. */
+	public static final int SAMPLE_LINES = 1024;
+
+	private static final int SKIP_LINES = 15 * SAMPLE_LINES; // Lines left out of a table after a window without repeats
+	private static final int MAX_ENTRIES = 1 << 20; // Distinct lines, and distinct terms, kept per batch
+	private static final int MAX_LINE_LENGTH = 256; // Longer lines are rarely repeated and are not kept
+
+	private final Evaluator evaluator;
+	private final ResultFormatter formatter;
+	private final boolean foldTerms;
+
+	private final TextTable lines = new TextTable();
+	private String[] lineResults = new String[1024]; // By line number
+	private final Sampler lineSampler = new Sampler(32); // At least 1 in 32 lines repeated
+
+	private final TextTable terms = new TextTable();
+	private double[] termValues = new double[1024]; // By term number; infinite if the term divides by zero
+	private final Sampler termSampler = new Sampler(4); // At least 1 in 4 terms repeated
+
+	private long lookups = 0;
+	private long hits = 0;
+	private long termLookups = 0;
+	private long termHits = 0;
+
+	/**
+	 * @param evaluator evaluates the lines that are not in the tables
+	 */
+	public BatchOptimizer(Evaluator evaluator) {
+		if (evaluator == null) {
+			throw new IllegalArgumentException("evaluator must not be null");
+		}
+		this.evaluator = evaluator;
+		this.formatter = evaluator.getFormatter();
+		this.foldTerms = !evaluator.isExact() && evaluator.getCache() == null;
+	}
+
+	/**
+	 * Forgets the lines and terms of the previous batch.
+	 */
+	public void startBatch() {
+		lines.clear();
+		terms.clear();
+		lineSampler.reset();
+		termSampler.reset();
+	}
+
+	/**
+	 * Evaluates one line of the batch.
+	 *
+	 * @param expression the expression
+	 * @return the same string {@link Evaluator#evaluate(CharSequence)} returns
+	 */
+	public String evaluate(CharSequence expression) {
+		int length = expression.length();
+		if (length > MAX_LINE_LENGTH) {
+			return evaluator.evaluate(expression);
+		}
+		if (lineSampler.skip()) {
+			return compute(expression);
+		}
+
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + expression.charAt(i);
+		}
+		int line = lines.find(expression, 0, length, hash);
+		lookups++;
+		lineSampler.sampled(1, line >= 0 ? 1 : 0);
+		if (line >= 0) {
+			hits++;
+			return lineResults[line];
+		}
+
+		String result = compute(expression);
+		line = lines.add(line, hash, expression, 0, length);
+		if (line >= 0) {
+			if (line == lineResults.length) {
+				lineResults = Arrays.copyOf(lineResults, line * 2);
+			}
+			lineResults[line] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return how many lines and terms were looked up, and how many of them were
+	 *         found, since this optimizer was created
+	 */
+	@Override
+	public String toString() {
+		return String.format("BatchOptimizer[lookups=%d, reused=%d (%.1f%%), termLookups=%d, termsReused=%d (%.1f%%)]",
+				lookups, hits, lookups == 0 ? 0.0 : 100.0 * hits / lookups, termLookups, termHits,
+				termLookups == 0 ? 0.0 : 100.0 * termHits / termLookups);
+	}
+
+	/**
+	 * Evaluates a line that is not in the line table.
+	 */
+	private String compute(CharSequence expression) {
+		if (!foldTerms || termSampler.skip()) {
+			return evaluator.evaluate(expression);
+		}
+		return computeTerms(expression);
+	}
+
+	/**
+	 * Adds up the values of the line's terms, folding the ones not seen before.
+	 * Hands the line to the evaluator as soon as it finds anything but a plain
+	 * + - * / expression, including a syntax error.
+	 */
+	private String computeTerms(CharSequence expression) {
+		int length = expression.length();
+		double sum = 0; // Sum of the finished terms, in the evaluator's order
+		boolean hasSum = false;
+		char sumOp = 0; // The + or - before the current term (0 for the first)
+		int looked = 0;
+		int found = 0;
+		String fallback = null;
+
+		for (int start = 0; fallback == null;) {
+			// The term runs to the next + or to the next - that is not a sign
+			int end = start;
+			int hash = 0;
+			while (end < length) {
+				char c = expression.charAt(end);
+				if (c == '+' || (c == '-' && end > start && !CalculatorValidator.isOperator(expression.charAt(end - 1)))) {
+					break;
+				}
+				if (!(Character.isDigit(c) || c == '.' || CalculatorValidator.isOperator(c))) {
+					break; // Not plain syntax; the check below hands the line over
+				}
+				hash = 31 * hash + c;
+				end++;
+			}
+			if (end == start || (end < length && expression.charAt(end) != '+' && expression.charAt(end) != '-')
+					|| (end < length && end + 1 == length)) {
+				fallback = evaluator.evaluate(expression); // Empty term, other characters or a trailing operator
+				break;
+			}
+
+			int term = terms.find(expression, start, end - start, hash);
+			looked++;
+			double value;
+			if (term >= 0) {
+				found++;
+				value = termValues[term];
+			} else {
+				value = foldTerm(expression, start, end);
+				if (Double.isNaN(value)) {
+					fallback = evaluator.evaluate(expression); // A malformed number, or 0 * infinity
+					break;
+				}
+				term = terms.add(term, hash, expression, start, end - start);
+				if (term >= 0) {
+					if (term == termValues.length) {
+						termValues = Arrays.copyOf(termValues, term * 2);
+					}
+					termValues[term] = value;
+				}
+			}
+
+			if (sumOp == '-') {
+				value = -value;
+			}
+			sum = hasSum ? sum + value : value;
+			hasSum = true;
+			if (end == length) {
+				break;
+			}
+			sumOp = expression.charAt(end);
+			start = end + 1;
+		}
+
+		termLookups += looked;
+		termHits += found;
+		termSampler.sampled(looked, found);
+		if (fallback != null) {
+			return fallback;
+		}
+		if (CalculatorValidator.isResultInvalid(sum)) {
+			return CalculatorError.MATH_ERROR.getMessage(); // Also after a term that divided by zero
+		}
+		return formatter.format(sum);
+	}
+
+	/**
+	 * Folds a term of * and / the way the evaluator does.
+	 *
+	 * @return its value; infinite if it divides by zero, which leaves any sum
+	 *         with it not finite, so a Math Error as for the evaluator; NaN if a
+	 *         number is malformed
+	 */
+	private static double foldTerm(CharSequence expression, int start, int end) {
+		double term = 0;
+		boolean divideByZero = false; // Still parse the rest: a malformed number wins
+		char op = 0;
+		int numberStart = start;
+		for (int i = start; i <= end; i++) {
+			char c = i < end ? expression.charAt(i) : 0;
+			if (i < end && ((c != '*' && c != '/') || i == numberStart)) {
+				continue; // Part of a number, or a sign right after * or /
+			}
+			double number = DecimalParser.parse(expression, numberStart, i);
+			if (DecimalParser.isMalformed(number)) {
+				return DecimalParser.MALFORMED;
+			}
+			switch (op) {
+			case '*':
+				term *= number;
+				break;
+			case '/':
+				if (number == 0) {
+					divideByZero = true;
+				}
+				term /= number;
+				break;
+			default:
+				term = number;
+				break;
+			}
+			op = c;
+			numberStart = i + 1;
+		}
+		return divideByZero ? Double.POSITIVE_INFINITY : term;
+	}
+
+	/**
+	 * Decides from the lines of each window whether a table is worth looking up.
+	 */
+	private static final class Sampler {
+		private final int minShare; // A window keeps the table if at least 1 in minShare lookups found
+		private int lines = 0; // Lines of the current window
+		private int looked = 0;
+		private int found = 0;
+		private int skipping = 0; // Lines still to be evaluated without the table
+
+		Sampler(int minShare) {
+			this.minShare = minShare;
+		}
+
+		/**
+		 * @return true if the current line is to be evaluated without the table
+		 */
+		boolean skip() {
+			if (skipping > 0) {
+				skipping--;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Counts the lookups of one line.
+		 */
+		void sampled(int lookups, int hits) {
+			looked += lookups;
+			found += hits;
+			if (++lines == SAMPLE_LINES) {
+				if (found * minShare < looked) {
+					skipping = SKIP_LINES;
+				}
+				lines = 0;
+				looked = 0;
+				found = 0;
+			}
+		}
+
+		void reset() {
+			lines = 0;
+			looked = 0;
+			found = 0;
+			skipping = 0;
+		}
+	}
+
+	/**
+	 * Numbers the distinct texts of a batch in the order they are added: an
+	 * open-addressing table whose slots are in use if their stamp is the current
+	 * batch, over the texts stored back to back.
+	 */
+	private static final class TextTable {
+		private char[] keys = new char[16 * 1024];
+		private int keysLength = 0;
+		private int[] starts = new int[1024]; // By number: where the text starts in keys
+		private int[] lengths = new int[1024];
+
+		private int[] stamps = new int[1024]; // By slot
+		private int[] hashes = new int[1024];
+		private int[] numbers = new int[1024];
+		private int batch = 1;
+		private int size = 0; // Texts stored in this batch
+
+		/**
+		 * Forgets every text in constant time.
+		 */
+		void clear() {
+			batch++;
+			if (batch == 0) { // Wrapped around: stamps from long ago could look current
+				Arrays.fill(stamps, 0);
+				batch = 1;
+			}
+			if (keys.length > 1024 * 1024) {
+				keys = new char[16 * 1024]; // Do not hold on to one unusual batch's text
+			}
+			keysLength = 0;
+			size = 0;
+		}
+
+		/**
+		 * @return the number of text[start, start+length), or if it is not stored,
+		 *         a negative value to pass to {@link #add}
+		 */
+		int find(CharSequence text, int start, int length, int hash) {
+			int mask = stamps.length - 1;
+			int slot = mix(hash) & mask;
+			while (stamps[slot] == batch) {
+				if (hashes[slot] == hash && lengths[numbers[slot]] == length
+						&& sameText(starts[numbers[slot]], text, start, length)) {
+					return numbers[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1 - slot;
+		}
+
+		/**
+		 * Stores a text that {@link #find} did not find.
+		 *
+		 * @param notFound what find returned
+		 * @return its number, or -1 if the batch already has MAX_ENTRIES texts
+		 */
+		int add(int notFound, int hash, CharSequence text, int start, int length) {
+			if (size == MAX_ENTRIES) {
+				return -1;
+			}
+			if (keysLength + length > keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysLength + length));
+			}
+			for (int i = 0; i < length; i++) {
+				keys[keysLength + i] = text.charAt(start + i);
+			}
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+			}
+			int number = size++;
+			starts[number] = keysLength;
+			lengths[number] = length;
+			keysLength += length;
+
+			int slot = -1 - notFound;
+			stamps[slot] = batch;
+			hashes[slot] = hash;
+			numbers[slot] = number;
+			if (size * 2 > stamps.length) {
+				grow();
+			}
+			return number;
+		}
+
+		private boolean sameText(int keyStart, CharSequence text, int start, int length) {
+			for (int i = 0; i < length; i++) {
+				if (keys[keyStart + i] != text.charAt(start + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Doubles the slots, rehashing the texts of the current batch.
+		 */
+		private void grow() {
+			int[] oldStamps = stamps;
+			int[] oldHashes = hashes;
+			int[] oldNumbers = numbers;
+
+			int capacity = oldStamps.length * 2;
+			stamps = new int[capacity];
+			hashes = new int[capacity];
+			numbers = new int[capacity];
+
+			for (int i = 0; i < oldStamps.length; i++) {
+				if (oldStamps[i] != batch) {
+					continue;
+				}
+				int to = mix(oldHashes[i]) & (capacity - 1);
+				while (stamps[to] == batch) {
+					to = (to + 1) & (capacity - 1);
+				}
+				stamps[to] = batch;
+				hashes[to] = oldHashes[i];
+				numbers[to] = oldNumbers[i];
+			}
+		}
+
+		/**
+		 * Spreads the bits of a String-style hash, whose low bits are poor for texts
+		 * that differ only near their start.
+		 */
+		private static int mix(int hash) {
+			hash *= 0x9E3779B9;
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * CalculatorJfr records the stages of CalculatorLogic as JDK Flight Recorder
+ * events, so calculator latency shows up next to GC and safepoint pauses in
+ * the same recording. No agent is needed: {@link #install()} sets it as the
+ * tracer and any running recording picks the events up.
+ *
+ * By default only stages slower than 5 ms are recorded. Change it in the
+ * recording settings, e.g.
+ * -XX:StartFlightRecording:calculator.Evaluate#threshold=0ms or in a .jfc file.
+ * While no recording has the events enabled, a stage costs one event
+ * allocation and an enabled check.
+ */
+public class CalculatorJfr implements CalculatorTracer {
+
+	/**
+	 * Sets a CalculatorJfr as the tracer of all calculator sessions and
+	 * registers its event types, so recordings list them before the first one
+	 * is emitted.
+	 */
+	public static void install() {
+		FlightRecorder.register(UserInputEvent.class);
+		FlightRecorder.register(DoneInsertInputEvent.class);
+		FlightRecorder.register(EvaluateEvent.class);
+		FlightRecorder.register(ApplyPrecedenceEvent.class);
+		CalculatorLogic.setTracer(new CalculatorJfr());
+	}
+
+	@Override
+	public Object begin(int stage) {
+		StageEvent event;
+		switch (stage) {
+		case USER_INPUT:
+			event = new UserInputEvent();
+			break;
+		case DONE_INSERT_INPUT:
+			event = new DoneInsertInputEvent();
+			break;
+		case EVALUATE:
+			event = new EvaluateEvent();
+			break;
+		default:
+			event = new ApplyPrecedenceEvent();
+			break;
+		}
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void end(Object span, int expressionLength, int tokenCount, String outcome) {
+		StageEvent event = (StageEvent) span;
+		event.end();
+		if (event.shouldCommit()) { // Only now, past the threshold, are the fields filled in
+			event.expressionLength = expressionLength;
+			event.tokenCount = tokenCount;
+			event.outcome = Evaluator.isError(outcome) ? outcome : "OK";
+			event.commit();
+		}
+	}
+
+	@Category({ "Calculator" })
+	@Threshold("5 ms")
+	@StackTrace(false)
+	abstract static class StageEvent extends Event {
+		@Label("Expression Length")
+		@Description("Characters in the expression, -1 if the stage has none")
+		int expressionLength;
+
+		@Label("Token Count")
+		@Description("Numbers and operators in the expression")
+		int tokenCount;
+
+		@Label("Outcome")
+		@Description("OK, Syntax Error or Math Error")
+		String outcome;
+	}
+
+	@Name("calculator.UserInput")
+	@Label("Calculator Keystroke")
+	@Description("One keystroke in CalculatorLogic.press")
+	static class UserInputEvent extends StageEvent {
+	}
+
+	@Name("calculator.DoneInsertInput")
+	@Label("Calculator Equals")
+	@Description("Evaluating the expression for \"=\" and building the display")
+	static class DoneInsertInputEvent extends StageEvent {
+	}
+
+	@Name("calculator.Evaluate")
+	@Label("Calculator Evaluate")
+	@Description("Reading and evaluating the expression")
+	static class EvaluateEvent extends StageEvent {
+	}
+
+	@Name("calculator.ApplyPrecedence")
+	@Label("Calculator Apply Precedence")
+	@Description("One call of CalculatorLogic.applyPrecedence")
+	static class ApplyPrecedenceEvent extends StageEvent {
+	}
+}
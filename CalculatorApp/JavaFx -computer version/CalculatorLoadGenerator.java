@@ -0,0 +1,194 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CalculatorLoadGenerator sends random expressions to a running
+ * CalculatorServer from several client threads and reports the throughput and
+ * the latency percentiles.
+ *
+ * Each client thread keeps one HTTP/1.1 keep-alive connection and writes every
+ * request in a single packet, so the numbers measure the service rather than
+ * client overhead.
+ *
+ * Usage: java CalculatorLoadGenerator [url] [threads] [seconds] [terms]
+ * (defaults: http://localhost:8080/evaluate, 8 threads, 10 seconds, 5 terms)
+ */
+public class CalculatorLoadGenerator {
+
+	// Latency histogram: bucket i holds requests that took [i, i+1) microseconds,
+	// the last bucket holds everything slower
+	private static final int BUCKETS = 100_000;
+
+	public static void main(String[] args) throws InterruptedException {
+		String url = args.length > 0 ? args[0] : "http://localhost:8080/evaluate";
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int terms = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		URI uri = URI.create(url);
+		int port = port(uri);
+		long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		AtomicLong errors = new AtomicLong();
+
+		long[][] histograms = new long[threads][];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final long[] histogram = new long[BUCKETS];
+			histograms[t] = histogram;
+			final Random random = new Random(t);
+			workers[t] = new Thread(() -> {
+				Socket socket = null;
+				InputStream in = null;
+				while (System.nanoTime() < deadline) {
+					byte[] request = buildRequest(uri, port, randomExpression(random, terms));
+					long start = System.nanoTime();
+					try {
+						if (socket == null) {
+							socket = new Socket(uri.getHost(), port);
+							socket.setTcpNoDelay(true);
+							in = new BufferedInputStream(socket.getInputStream());
+						}
+						socket.getOutputStream().write(request);
+						if (readResponse(in) != 200) {
+							errors.incrementAndGet();
+						}
+					} catch (IOException e) {
+						errors.incrementAndGet();
+						closeQuietly(socket);
+						socket = null;
+						continue;
+					}
+					long micros = (System.nanoTime() - start) / 1000;
+					histogram[(int) Math.min(micros, BUCKETS - 1)]++;
+				}
+				closeQuietly(socket);
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		long[] total = new long[BUCKETS];
+		long count = 0;
+		for (long[] histogram : histograms) {
+			for (int i = 0; i < BUCKETS; i++) {
+				total[i] += histogram[i];
+				count += histogram[i];
+			}
+		}
+
+		System.out.printf("requests: %d (%d errors) in %d s, %.0f per second%n", count, errors.get(), seconds,
+				(double) count / seconds);
+		System.out.printf("latency us: p50=%d p90=%d p99=%d p99.9=%d max=%s%n", percentile(total, count, 0.50),
+				percentile(total, count, 0.90), percentile(total, count, 0.99), percentile(total, count, 0.999),
+				maxLatency(total));
+	}
+
+	private static String randomExpression(Random random, int terms) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < terms; i++) {
+			if (i > 0) {
+				sb.append("+-*/".charAt(random.nextInt(4)));
+			}
+			sb.append(1 + random.nextInt(999));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the port of the URL, or the default port of its scheme if it names
+	 *         none (URI.getPort() is then -1)
+	 */
+	private static int port(URI uri) {
+		if (uri.getPort() >= 0) {
+			return uri.getPort();
+		}
+		return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+	}
+
+	private static byte[] buildRequest(URI uri, int port, String expression) {
+		byte[] body = expression.getBytes(StandardCharsets.UTF_8);
+		String head = "POST " + uri.getRawPath() + " HTTP/1.1\r\nHost: " + uri.getHost() + ":" + port
+				+ "\r\nContent-Type: text/plain\r\nContent-Length: " + body.length + "\r\n\r\n";
+		byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+		byte[] request = new byte[headBytes.length + body.length];
+		System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+		System.arraycopy(body, 0, request, headBytes.length, body.length);
+		return request;
+	}
+
+	/**
+	 * Reads one response (status line, headers and a Content-Length body) and
+	 * returns its status code.
+	 */
+	private static int readResponse(InputStream in) throws IOException {
+		String statusLine = readLine(in);
+		int status = Integer.parseInt(statusLine.split(" ")[1]);
+		int contentLength = 0;
+		String header;
+		while (!(header = readLine(in)).isEmpty()) {
+			int colon = header.indexOf(':');
+			if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+				contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+			}
+		}
+		for (int i = 0; i < contentLength; i++) {
+			if (in.read() < 0) {
+				throw new IOException("Connection closed in the middle of a response");
+			}
+		}
+		return status;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				throw new IOException("Connection closed");
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+
+	private static void closeQuietly(Socket socket) {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	private static long percentile(long[] histogram, long count, double fraction) {
+		long target = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			seen += histogram[i];
+			if (seen >= target && seen > 0) {
+				return i;
+			}
+		}
+		return histogram.length - 1;
+	}
+
+	private static String maxLatency(long[] histogram) {
+		for (int i = histogram.length - 1; i >= 0; i--) {
+			if (histogram[i] > 0) {
+				return i == histogram.length - 1 ? ">" + i : String.valueOf(i);
+			}
+		}
+		return "0";
+	}
+}
@@ -1,16 +1,83 @@
-import java.util.ArrayList;
-
 /**
  * CalculatorLogic handles the core logic of a simple calculator. It supports
  * basic operations (+, -, *, /), sign toggling, answer recall, and delete.
+ *
+ * Each instance is one calculator session: it holds only what the user has
+ * typed and the last answer. The evaluation itself is done by an Evaluator,
+ * which is stateless and can be shared by many sessions.
  */
 public class CalculatorLogic {
-	private StringBuilder currentInput = new StringBuilder(); // Full expression being typed (e.g. "3+5*2")
+	private static final Evaluator DEFAULT_EVALUATOR = new Evaluator();
+	private static volatile CalculatorTracer tracer = null; // Shared by all sessions, may be null
+
+	private final Evaluator evaluator; // Shared, thread-safe
+	private final HistoryTape history; // Shared, thread-safe, may be null
+	private final ExpressionBuffer currentInput = new ExpressionBuffer(); // Full expression being typed (e.g. "3+5*2")
 	private String finalAnswer = "-1"; // Last calculated result
-	private ArrayList<Double> numbers = new ArrayList<>();// Parsed numbers
-	private ArrayList<Character> operators = new ArrayList<>(); // Parsed operations
-	private StringBuilder currentNumber = new StringBuilder(); // currect number being typed
 	private boolean afterEquals = false; // Flag to track whether last action was '='
+	private final LiveEvaluation live = new LiveEvaluation(); // Running result of currentInput, updated per keystroke
+	private DisplayListener listener = null; // Told about every change of the display, may be null
+	private String shownSuffix = null; // Shown after the expression (e.g. " = 8.000"), or null
+	private String shownMessage = null; // Error message shown instead of the expression, or null
+	private boolean recorded = true; // Whether CalculatorMetrics and the tracer see this session
+
+	/**
+	 * Creates a session that uses the default evaluator (3 decimals, no cache).
+	 */
+	public CalculatorLogic() {
+		this(DEFAULT_EVALUATOR);
+	}
+
+	/**
+	 * @param evaluator the evaluator to use; may be shared with other sessions
+	 */
+	public CalculatorLogic(Evaluator evaluator) {
+		this(evaluator, null);
+	}
+
+	/**
+	 * @param evaluator the evaluator to use; may be shared with other sessions
+	 * @param history   tape that every calculation is appended to, or null
+	 */
+	public CalculatorLogic(Evaluator evaluator, HistoryTape history) {
+		if (evaluator == null) {
+			throw new IllegalArgumentException("evaluator must not be null");
+		}
+		this.evaluator = evaluator;
+		this.history = history;
+	}
+
+	/**
+	 * Installs the tracer that every session reports its stages to. Meant to be
+	 * called once at startup, before sessions are used.
+	 *
+	 * @param newTracer the tracer, or null to stop tracing
+	 */
+	public static void setTracer(CalculatorTracer newTracer) {
+		tracer = newTracer;
+	}
+
+	/**
+	 * Sets whether this session is counted in CalculatorMetrics and reported to
+	 * the tracer. Synthetic sessions, such as the startup warmup's, turn it off
+	 * so they do not mix with what users do.
+	 *
+	 * @param newRecorded false to keep this session out of metrics and traces
+	 */
+	public void setRecorded(boolean newRecorded) {
+		recorded = newRecorded;
+	}
+
+	/**
+	 * Sets the listener that is told how the display changes. Front ends that
+	 * use one call {@link #press(String)} instead of userInput, so no display
+	 * string is built.
+	 *
+	 * @param newListener the listener, or null for none
+	 */
+	public void setDisplayListener(DisplayListener newListener) {
+		listener = newListener;
+	}
 
 	/**
 	 * Processes user input from the UI and routes it to the appropriate logic
@@ -20,183 +87,380 @@ public class CalculatorLogic {
 	 * @return the updated display string
 	 */
 	public String userInput(String text) {
+		press(text);
+		return getDisplay();
+	}
+
+	/**
+	 * Processes user input like {@link #userInput(String)}, but only tells the
+	 * display listener what changed. Costs time in proportion to the change, not
+	 * to the length of the expression.
+	 *
+	 * @param text the button label that was clicked
+	 */
+	public void press(String text) {
+		long start = startTimer();
+		Object span = beginTrace(CalculatorTracer.USER_INPUT);
+		handleInput(text);
+		endTrace(span, shownMessage != null ? shownMessage : "");
+		recordTime(CalculatorMetrics.INPUT, start);
+	}
+
+	/**
+	 * @return what the display shows: the expression, the expression with its
+	 *         result after "=", or an error message
+	 */
+	public String getDisplay() {
+		if (shownMessage != null) {
+			return shownMessage;
+		}
+		if (shownSuffix != null) {
+			return currentInput.toString() + shownSuffix;
+		}
+		return currentInput.toString();
+	}
+
+	/**
+	 * Routes one keystroke to its handler.
+	 *
+	 * @param text the button label that was clicked
+	 */
+	private void handleInput(String text) {
+		showExpression();
 		switch (text) {
 		case "=":
 			afterEquals = true;
-			return doneInsertInput();
+			doneInsertInput();
+			break;
 		case "C":
 			finalAnswer = "-1";
 			clearAll();
-			return currentInput.toString();
+			break;
 		case "DEL":
 			deleteLastChar();
-			return currentInput.toString();
+			break;
 		case "+/-":
-			return toggleLastNumberSign();
-
+			toggleLastNumberSign();
+			break;
 		case "Ans":
-			return appendFinalAnswer();
+			appendFinalAnswer();
+			break;
 		default:
-			return appendToCurrentInput(text);
-
+			appendToCurrentInput(text);
+			break;
 		}
 	}
 
 	/**
-	 * Parses the full expression from currentInput into numbers and operators,
-	 * performs the calculation, and returns the result or an error.
+	 * Evaluates a whole expression in one call, as if it had been typed and "="
+	 * pressed. The result becomes the answer recalled by "Ans". Callers that do
+	 * not need a session can use an Evaluator directly.
 	 *
+	 * @param expression the expression to evaluate (e.g. "3+5*2")
 	 * @return formatted result string or error message
 	 */
-	private String doneInsertInput() {
+	public String evaluate(CharSequence expression) {
+		showExpression();
+		clearAll();
+		appendInput(expression);
+		live.append(currentInput);
+		afterEquals = true;
+		String result = calculate();
+		showResult(result);
+		return result;
+	}
 
-		if (currentInput == null || currentInput.isEmpty()) {
-			clearAll();
+	/**
+	 * Returns the result the current expression would have if "=" were pressed
+	 * now, without changing any state. Cheap enough to call after every keystroke:
+	 * only the number being typed is parsed.
+	 *
+	 * @return formatted result, Math Error, or "" while the expression is
+	 *         incomplete
+	 */
+	public String getLivePreview() {
+		switch (live.compute(currentInput)) {
+		case LiveEvaluation.OK:
+			return liveResult();
+		case LiveEvaluation.MATH_ERROR:
+			return CalculatorError.MATH_ERROR.getMessage();
+		default:
 			return "";
 		}
+	}
+
+	/**
+	 * Evaluates the full expression in currentInput and shows the expression
+	 * with its result, or an error.
+	 */
+	private void doneInsertInput() {
+		Object span = beginTrace(CalculatorTracer.DONE_INSERT_INPUT);
+		String result = "";
+		if (currentInput.length() == 0) {
+			clearAll();
+		} else {
+			result = calculate();
+			showResult(result);
+		}
+		endTrace(span, result);
+	}
+
+	/**
+	 * Shows the result of "=": an error message replaces the expression, a number
+	 * is shown after it.
+	 */
+	private void showResult(String result) {
+		boolean error = Evaluator.isError(result);
+		if (error) {
+			shownMessage = result;
+		} else {
+			shownSuffix = " = " + result;
+		}
+		if (listener != null) {
+			listener.onResult(result, error);
+		}
+	}
 
-		numbers.clear();
-		operators.clear();
-		currentNumber.setLength(0);
+	/**
+	 * Shows an error message in place of the expression, which is kept.
+	 */
+	private void showMessage(String message) {
+		shownMessage = message;
+		if (listener != null) {
+			listener.onResult(message, true);
+		}
+	}
 
-		try {
-			parseInput();
-			if (!CalculatorValidator.hasValidOperatorNumberRatio(numbers, operators)) {
-				clearAll();
-				return CalculatorError.SYNTAX_ERROR.getMessage();
+	/**
+	 * Goes back to showing only the expression, before a keystroke changes it.
+	 */
+	private void showExpression() {
+		if (shownMessage != null) {
+			int length = shownMessage.length();
+			shownMessage = null;
+			if (listener != null) {
+				listener.onReplace(0, length, currentInput);
+			}
+		} else if (shownSuffix != null) {
+			int length = shownSuffix.length();
+			shownSuffix = null;
+			if (listener != null) {
+				listener.onDeleteTail(length);
 			}
+		}
+	}
 
-		} catch (NumberFormatException e) {
-			clearAll();
-			return CalculatorError.SYNTAX_ERROR.getMessage();
+	/**
+	 * Appends to currentInput and tells the listener.
+	 */
+	private void appendInput(CharSequence text) {
+		currentInput.append(text);
+		if (listener != null && text.length() > 0) {
+			listener.onAppend(text);
 		}
+	}
 
+	/**
+	 * Replaces currentInput from start to its end and tells the listener.
+	 */
+	private void replaceInputTail(int start, CharSequence text) {
+		int end = currentInput.length();
+		currentInput.replaceTail(start, text);
+		if (listener != null) {
+			listener.onReplace(start, end, text);
+		}
+	}
 
-		String result = applyPrecedence(numbers, operators); 
+	/**
+	 * Empties currentInput and tells the listener.
+	 */
+	private void clearInput() {
+		int length = currentInput.length();
+		currentInput.clear();
+		if (listener != null && length > 0) {
+			listener.onDeleteTail(length);
+		}
+	}
 
-		// If result is an error message (starts with known prefix), return only the
-		// error
-		if (result.equals(CalculatorError.MATH_ERROR.getMessage())) {
-			return result;
+	/**
+	 * Computes the value of currentInput. The running evaluation already has it
+	 * unless the input has an error or odd characters, in which case the
+	 * evaluator decides.
+	 *
+	 * @return formatted result string or error message
+	 */
+	private String calculate() {
+		long start = startTimer();
+		Object span = beginTrace(CalculatorTracer.EVALUATE);
+		String result;
+		switch (live.compute(currentInput)) {
+		case LiveEvaluation.OK:
+			result = liveResult();
+			break;
+		case LiveEvaluation.MATH_ERROR:
+			result = CalculatorError.MATH_ERROR.getMessage();
+			break;
+		default:
+			result = evaluator.evaluate(currentInput);
+			break;
 		}
+		recordTime(CalculatorMetrics.EVALUATE, start);
+		if (recorded && CalculatorMetrics.ENABLED) {
+			recordOutcome(result);
+		}
+		endTrace(span, result); // Before a syntax error clears the input
 
-		// Otherwise, return the full expression and result
-		return currentInput.toString() + " = " + result;
+		if (history != null) {
+			history.record(currentInput, result); // A failure is counted by the tape, not the user's problem
+		}
+		if (result.equals(CalculatorError.SYNTAX_ERROR.getMessage())) {
+			clearAll();
+		} else if (!result.equals(CalculatorError.MATH_ERROR.getMessage())) {
+			finalAnswer = result;
+		}
+		return result;
+	}
 
+	/**
+	 * Formats the running evaluation once it is known to be valid. Its value is a
+	 * double, so an exact evaluator evaluates the input itself.
+	 */
+	private String liveResult() {
+		if (evaluator.isExact()) {
+			return evaluator.evaluate(currentInput);
+		}
+		long start = startTimer();
+		String result = evaluator.getFormatter().format(live.value());
+		recordTime(CalculatorMetrics.FORMAT, start);
+		return result;
 	}
 
 	/**
-	 * Parses the currentInput expression and fills the numbers and operators lists.
+	 * Tells the tracer, if one is installed, that a stage starts.
 	 *
-	 * @throws NumberFormatException if a number is invalid
-	 */
-	private void parseInput() {
-		for (int i = 0; i < currentInput.length(); i++) {
-			char c = currentInput.charAt(i);
-			if (i == 0 && c == '-'
-					|| (i > 0 && CalculatorValidator.isOperator(currentInput.charAt(i - 1)) && c == '-')) {
-				currentNumber.append(c);
-			} else if (Character.isDigit(c) || c == '.') {
-				currentNumber.append(c);
-			} else if (CalculatorValidator.isOperator(c)) {
-				if (currentNumber.length() == 0 || currentNumber.toString().equals("-")) {
-					throw new NumberFormatException();
-				}
-				numbers.add(Double.parseDouble(currentNumber.toString()));
-				currentNumber.setLength(0);
-				operators.add(c);
-			}
-		}
-		if (currentNumber.length() > 0) {
-			numbers.add(Double.parseDouble(currentNumber.toString()));
+	 * @return what to pass to {@link #endTrace(Object, String)}
+	 */
+	private Object beginTrace(int stage) {
+		CalculatorTracer current = tracer;
+		return current == null || !recorded ? null : current.begin(stage);
+	}
+
+	/**
+	 * @return the start time to pass to {@link #recordTime(int, long)}
+	 */
+	private long startTimer() {
+		return recorded ? CalculatorMetrics.start() : 0;
+	}
+
+	/**
+	 * Records how long a stage took in CalculatorMetrics, unless this session is
+	 * not recorded.
+	 */
+	private void recordTime(int stage, long start) {
+		if (recorded) {
+			CalculatorMetrics.record(stage, start);
 		}
 	}
 
+	/**
+	 * Tells the tracer that a stage ended, with the current expression.
+	 */
+	private void endTrace(Object span, String outcome) {
+		CalculatorTracer current = tracer;
+		if (span != null && current != null) {
+			current.end(span, currentInput.length(), live.tokenCount(), outcome);
+		}
+	}
 
+	/**
+	 * Counts a calculation's outcome in CalculatorMetrics, classifying syntax
+	 * errors with the validator (which only runs for them).
+	 */
+	private void recordOutcome(String result) {
+		if (result.equals(CalculatorError.SYNTAX_ERROR.getMessage())) {
+			long start = startTimer();
+			int code = CalculatorValidator.errorCode(CalculatorValidator.validate(currentInput));
+			recordTime(CalculatorMetrics.VALIDATE, start);
+			CalculatorMetrics.recordSyntaxError(code);
+			CalculatorMetrics.recordOutcome(CalculatorMetrics.SYNTAX_ERROR, currentInput.length());
+		} else if (result.equals(CalculatorError.MATH_ERROR.getMessage())) {
+			CalculatorMetrics.recordOutcome(CalculatorMetrics.MATH_ERROR, currentInput.length());
+		} else {
+			CalculatorMetrics.recordOutcome(CalculatorMetrics.OK, currentInput.length());
+		}
+	}
 
 	/**
-	 * Toggles the sign of the last number in the input.
-	 *
-	 * @return updated input string or error message
+	 * Toggles the sign of the last number in the input, or shows an error if it
+	 * is not a number.
 	 */
-	private String toggleLastNumberSign() {
+	private void toggleLastNumberSign() {
 		if (afterEquals) {
-			return toggleAfterEquals();
+			toggleAfterEquals();
+			return;
 		}
 
-		int lastOperator = findLastOperatorIndex();
+		int lastOperator = currentInput.lastOperatorIndex();
 
-		// Extract the number after the last operator
-		String lastNumber = currentInput.substring(lastOperator + 1);
-		String toggled = toggleSign(lastNumber);
+		// Toggle the number after the last operator
+		String toggled = toggleSign(currentInput, lastOperator + 1, currentInput.length());
 		if (toggled == null) {
-			return CalculatorError.SYNTAX_ERROR.getMessage();
+			showMessage(CalculatorError.SYNTAX_ERROR.getMessage());
+			return;
 		}
 
 		// Replace it in the input
-		currentInput.replace(lastOperator + 1, currentInput.length(), toggled);
-		return currentInput.toString();
+		replaceInputTail(lastOperator + 1, toggled);
+		live.truncate(lastOperator + 1);
+		live.append(currentInput);
 	}
 
 	/**
 	 * Handles toggling the sign of the finalAnswer after equals.
-	 *
-	 * @return toggled result or error message
 	 */
-	private String toggleAfterEquals() {
-		String toggled = toggleSign(finalAnswer);
-		if (toggled.isEmpty())
-			return CalculatorError.SYNTAX_ERROR.getMessage();
+	private void toggleAfterEquals() {
+		String toggled = toggleSign(finalAnswer, 0, finalAnswer.length());
+		if (toggled.isEmpty()) {
+			showMessage(CalculatorError.SYNTAX_ERROR.getMessage());
+			return;
+		}
 		finalAnswer = toggled;
-		currentInput = new StringBuilder(finalAnswer);
+		clearInput();
+		appendInput(finalAnswer);
+		live.reset();
+		live.append(currentInput);
 		afterEquals = false;
-		return finalAnswer;
-	}
-
-	/**
-	 * Finds the index of the last operator in the current expression.
-	 *
-	 * @return index of the last operator or -1 if not found
-	 */
-	private int findLastOperatorIndex() {
-		for (int i = currentInput.length() - 1; i >= 0; i--) {
-			char c = currentInput.charAt(i);
-			if (CalculatorValidator.isOperator(c) && c != '-')
-				return i;
-		}
-		return -1;
 	}
 
 	/**
-	 * Toggles the sign of a string number.
+	 * Toggles the sign of a number held in value[start, end).
 	 *
-	 * @param value numeric string to toggle
+	 * @param value text holding the number to toggle
+	 * @param start index of the first character of the number
+	 * @param end   index after the last character of the number
 	 * @return toggled value or null if invalid
 	 */
-	private String toggleSign(String value) {
-		if (value == null || value.isEmpty()) {
+	private String toggleSign(CharSequence value, int start, int end) {
+		if (value == null || start >= end) {
 			return "";
 		}
 
-		try {
-			double num = Double.parseDouble(value);
-			if (num != 0) {
-				num *= -1;
-			}
-			return String.format("%.3f", num);
-		} catch (NumberFormatException e) {
+		double num = DecimalParser.parse(value, start, end);
+		if (DecimalParser.isMalformed(num)) {
 			return null;
 		}
+		if (num != 0) {
+			num *= -1;
+		}
+		return evaluator.getFormatter().format(num);
 	}
 
 	/**
 	 * Clears all internal state and resets flags.
 	 */
 	private void clearAll() {
-		currentInput.setLength(0);
-		currentNumber.setLength(0);
-		numbers.clear();
-		operators.clear();
+		clearInput();
+		live.reset();
 		afterEquals = false;
 	}
 
@@ -205,115 +469,102 @@ public class CalculatorLogic {
 	 */
 	private void deleteLastChar() {
 		if (currentInput.length() > 0) {
-			currentInput.delete(currentInput.length() - 1, currentInput.length());
+			currentInput.deleteLast();
+			live.truncate(currentInput.length());
+			if (listener != null) {
+				listener.onDeleteTail(1);
+			}
 		}
 	}
 
 	/**
 	 * Appends the final answer (Ans button) to the current input.
-	 *
-	 * @return updated input string
 	 */
-	private String appendFinalAnswer() {
+	private void appendFinalAnswer() {
 		if (afterEquals) {
-			currentInput.setLength(0);
+			clearInput();
+			live.reset();
 			afterEquals = false;
 		}
-		currentInput.append(finalAnswer);
-		return currentInput.toString();
+		appendInput(finalAnswer);
+		live.append(currentInput);
 	}
 
 	/**
 	 * Appends user input text to the current expression.
 	 *
 	 * @param text input string (number or operator)
-	 * @return updated expression
 	 */
-	private String appendToCurrentInput(String text) {
+	private void appendToCurrentInput(String text) {
 		if (afterEquals) {
-			currentInput.setLength(0);
-			currentInput.append(finalAnswer);
+			clearInput();
+			appendInput(finalAnswer);
+			live.reset();
 			afterEquals = false;
 		}
-		currentInput.append(text);
-		return currentInput.toString();
+		appendInput(text);
+		live.append(currentInput);
 	}
 
 	/**
 	 * Applies operator precedence and computes the final result. First handles *
-	 * and /, then handles + and -.
+	 * and /, then handles + and -. Both steps are a single left-to-right pass, and
+	 * the arrays are used as the working stack, so nothing is allocated.
 	 *
-	 * @param nums list of parsed numbers (must have size = ops.size() + 1)
-	 * @param ops  list of operators
+	 * @param nums     parsed numbers (overwritten while folding * and /)
+	 * @param numCount how many entries of nums are in use (must be opCount + 1)
+	 * @param ops      parsed operators (overwritten while folding * and /)
+	 * @param opCount  how many entries of ops are in use
 	 * @return computed result
 	 */
-	public String applyPrecedence(ArrayList<Double> nums, ArrayList<Character> ops) {
-		if (nums == null || ops == null || nums.size() == 0 || nums.size() != ops.size() + 1) {
+	public String applyPrecedence(double[] nums, int numCount, char[] ops, int opCount) {
+		Object span = beginTrace(CalculatorTracer.APPLY_PRECEDENCE);
+		String result = foldPrecedence(nums, numCount, ops, opCount);
+		CalculatorTracer current = tracer;
+		if (span != null && current != null) {
+			current.end(span, -1, numCount + opCount, result);
+		}
+		return result;
+	}
+
+	/**
+	 * The work of {@link #applyPrecedence(double[], int, char[], int)}.
+	 */
+	private String foldPrecedence(double[] nums, int numCount, char[] ops, int opCount) {
+		if (nums == null || ops == null || numCount == 0 || numCount != opCount + 1 || nums.length < numCount
+				|| ops.length < opCount) {
 			return CalculatorError.SYNTAX_ERROR.getMessage();
 		}
 
+		long start = startTimer();
+
 		// Step 1: Apply * and /
-		if( !applyMulDiv(nums, ops)) { 
+		int remaining = Evaluator.applyMulDiv(nums, ops, opCount);
+		if (remaining < 0) {
 			return CalculatorError.MATH_ERROR.getMessage();//Div with 0
 		}
 
 		// Step 2: Apply + and -
-		double result = nums.get(0);
-		for (int i = 0; i < ops.size(); i++) {
-			char op = ops.get(i);
-			double next = nums.get(i + 1);
-			if (op == '+') {
-				result += next;
-			} else if (op == '-') {
-				result -= next;
+		double result = nums[0];
+		for (int i = 0; i < remaining; i++) {
+			if (ops[i] == '+') {
+				result += nums[i + 1];
+			} else if (ops[i] == '-') {
+				result -= nums[i + 1];
 			}
 		}
-		
+
 		// Final validation (Infinity / NaN)
-		if (Double.isInfinite(result) || Double.isNaN(result)) {
-			return CalculatorError.MATH_ERROR.getMessage(); 
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
 		}
+		recordTime(CalculatorMetrics.EVALUATE, start);
 
-		finalAnswer = String.format("%.3f", result);
+		start = startTimer();
+		finalAnswer = evaluator.getFormatter().format(result);
+		recordTime(CalculatorMetrics.FORMAT, start);
 
 		return finalAnswer;
 	}
 
-	/**
-	 * Applies multiplication and division operations first, modifying the input
-	 * lists.
-	 *
-	 * @param nums list of numbers
-	 * @param ops  list of operators
-	 */
-	private boolean applyMulDiv(ArrayList<Double> nums, ArrayList<Character> ops) {
-		for (int i = 0; i < ops.size();) {
-			char op = ops.get(i);
-			if (op == '*' || op == '/') {
-				double left = nums.get(i);
-				double right = nums.get(i + 1);
-				double result;
-				
-				if (op == '*') {
-					result = left * right;
-				} else {
-					if (right == 0) {
-						return false;
-					}
-					result = left / right;
-				}
-
-				// Replace left operand with result, and remove right operand & operator
-				nums.set(i, result);
-				nums.remove(i + 1);
-				ops.remove(i); // Stay at same index for next iteration
-			} else {
-				i++;
-			}
-		}
-		
-		return true;
-
-	}
-
 }
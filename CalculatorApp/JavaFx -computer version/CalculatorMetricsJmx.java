@@ -0,0 +1,149 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * CalculatorMetricsJmx publishes {@link CalculatorMetrics} on the platform
+ * MBean server, so that jconsole, VisualVM or any JMX collector can read it.
+ * Every attribute read takes a fresh snapshot.
+ */
+public class CalculatorMetricsJmx implements CalculatorMetricsMXBean {
+
+	public static final String OBJECT_NAME = "calculator:type=Metrics";
+
+	/**
+	 * Registers the MBean, unless it is already registered.
+	 *
+	 * @throws IllegalStateException if the MBean server refuses it
+	 */
+	public static synchronized void register() {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new CalculatorMetricsJmx(), name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+		}
+	}
+
+	private static CalculatorMetrics.Distribution stage(int stage) {
+		return CalculatorMetrics.snapshot().getStage(stage);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return CalculatorMetrics.ENABLED;
+	}
+
+	@Override
+	public long getInputCount() {
+		return stage(CalculatorMetrics.INPUT).getCount();
+	}
+
+	@Override
+	public double getInputMeanNanos() {
+		return stage(CalculatorMetrics.INPUT).getMean();
+	}
+
+	@Override
+	public long getInputP99Nanos() {
+		return stage(CalculatorMetrics.INPUT).getPercentile(0.99);
+	}
+
+	@Override
+	public long getValidateCount() {
+		return stage(CalculatorMetrics.VALIDATE).getCount();
+	}
+
+	@Override
+	public double getValidateMeanNanos() {
+		return stage(CalculatorMetrics.VALIDATE).getMean();
+	}
+
+	@Override
+	public long getValidateP99Nanos() {
+		return stage(CalculatorMetrics.VALIDATE).getPercentile(0.99);
+	}
+
+	@Override
+	public long getEvaluateCount() {
+		return stage(CalculatorMetrics.EVALUATE).getCount();
+	}
+
+	@Override
+	public double getEvaluateMeanNanos() {
+		return stage(CalculatorMetrics.EVALUATE).getMean();
+	}
+
+	@Override
+	public long getEvaluateP50Nanos() {
+		return stage(CalculatorMetrics.EVALUATE).getPercentile(0.5);
+	}
+
+	@Override
+	public long getEvaluateP99Nanos() {
+		return stage(CalculatorMetrics.EVALUATE).getPercentile(0.99);
+	}
+
+	@Override
+	public long getFormatCount() {
+		return stage(CalculatorMetrics.FORMAT).getCount();
+	}
+
+	@Override
+	public double getFormatMeanNanos() {
+		return stage(CalculatorMetrics.FORMAT).getMean();
+	}
+
+	@Override
+	public long getFormatP99Nanos() {
+		return stage(CalculatorMetrics.FORMAT).getPercentile(0.99);
+	}
+
+	@Override
+	public long getOkCount() {
+		return CalculatorMetrics.snapshot().getOutcomes(CalculatorMetrics.OK);
+	}
+
+	@Override
+	public long getMathErrorCount() {
+		return CalculatorMetrics.snapshot().getOutcomes(CalculatorMetrics.MATH_ERROR);
+	}
+
+	@Override
+	public long getSyntaxErrorCount() {
+		return CalculatorMetrics.snapshot().getOutcomes(CalculatorMetrics.SYNTAX_ERROR);
+	}
+
+	@Override
+	public long[] getSyntaxErrorsByCode() {
+		CalculatorMetrics.Snapshot snapshot = CalculatorMetrics.snapshot();
+		long[] counts = new long[CalculatorValidator.INVALID_TREE_SYNTAX + 1];
+		for (int code = 0; code < counts.length; code++) {
+			counts[code] = snapshot.getSyntaxErrors(code);
+		}
+		return counts;
+	}
+
+	@Override
+	public double getExpressionLengthMean() {
+		return CalculatorMetrics.snapshot().getLengths().getMean();
+	}
+
+	@Override
+	public long getExpressionLengthP50() {
+		return CalculatorMetrics.snapshot().getLengths().getPercentile(0.5);
+	}
+
+	@Override
+	public long getExpressionLengthP99() {
+		return CalculatorMetrics.snapshot().getLengths().getPercentile(0.99);
+	}
+
+	@Override
+	public void reset() {
+		CalculatorMetrics.reset();
+	}
+}
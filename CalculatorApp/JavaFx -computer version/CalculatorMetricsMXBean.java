@@ -0,0 +1,57 @@
+/**
+ * The JMX view of {@link CalculatorMetrics}, registered as
+ * "calculator:type=Metrics" by {@link CalculatorMetricsJmx#register()}.
+ * Latencies are in nanoseconds; percentiles are bucket upper limits.
+ */
+public interface CalculatorMetricsMXBean {
+
+	boolean isEnabled();
+
+	long getInputCount();
+
+	double getInputMeanNanos();
+
+	long getInputP99Nanos();
+
+	long getValidateCount();
+
+	double getValidateMeanNanos();
+
+	long getValidateP99Nanos();
+
+	long getEvaluateCount();
+
+	double getEvaluateMeanNanos();
+
+	long getEvaluateP50Nanos();
+
+	long getEvaluateP99Nanos();
+
+	long getFormatCount();
+
+	double getFormatMeanNanos();
+
+	long getFormatP99Nanos();
+
+	long getOkCount();
+
+	long getMathErrorCount();
+
+	long getSyntaxErrorCount();
+
+	/**
+	 * @return syntax errors by CalculatorValidator code, indexed by the code
+	 */
+	long[] getSyntaxErrorsByCode();
+
+	double getExpressionLengthMean();
+
+	long getExpressionLengthP50();
+
+	long getExpressionLengthP99();
+
+	/**
+	 * Sets every counter back to 0.
+	 */
+	void reset();
+}
@@ -0,0 +1,334 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * CalculatorServer exposes the calculator engine as a small HTTP service on
+ * localhost, using the JDK's built-in HttpServer. Each request runs on its own
+ * virtual thread when the JVM has them (Java 21+), otherwise on a cached thread
+ * pool.
+ *
+ * Endpoints (all POST, plain text UTF-8 bodies):
+ * <ul>
+ * <li>/evaluate - body is one expression, response is its result</li>
+ * <li>/batch - body is one expression per line, response is one result per
+ * line</li>
+ * <li>/session/{id} - body is one button label per line (e.g. "7", "+", "=");
+ * they are pressed in order on that session and the response is the display.
+ * DELETE ends the session.</li>
+ * <li>GET /history?prefix=3*&amp;limit=100 - the newest calculations whose
+ * expression starts with prefix, one "expression = result @time" per line (only
+ * when a history directory is given)</li>
+ * </ul>
+ *
+ * Request bodies larger than -Dcalculator.maxBodyBytes (16 MB by default) are
+ * answered with 413, so one request cannot fill the heap of the service.
+ *
+ * Usage: java CalculatorServer [port] [cacheEntries] [historyDir]
+ */
+public class CalculatorServer {
+
+	private static final int DEFAULT_PORT = 8080;
+	private static final int DEFAULT_MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+	static {
+		// The built-in server writes the response headers and body separately; with
+		// Nagle's algorithm on, the body then waits for a delayed ACK (~40 ms). Must
+		// be set before the first HttpServer is created.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Evaluator evaluator;
+	private final CalculatorSessions sessions;
+	private final HistoryTape history; // May be null
+	private final int maxBodyBytes;
+
+	/**
+	 * Creates the server bound to the loopback address. Call {@link #start()} to
+	 * begin serving.
+	 *
+	 * @param port      the port, or 0 for any free port
+	 * @param evaluator evaluator shared by all requests and sessions
+	 */
+	public CalculatorServer(int port, Evaluator evaluator) throws IOException {
+		this(port, evaluator, null);
+	}
+
+	/**
+	 * @param port      the port, or 0 for any free port
+	 * @param evaluator evaluator shared by all requests and sessions
+	 * @param history   tape that every calculation is appended to and /history
+	 *                  reads, or null
+	 */
+	public CalculatorServer(int port, Evaluator evaluator, HistoryTape history) throws IOException {
+		this.evaluator = evaluator;
+		this.history = history;
+		this.sessions = new CalculatorSessions(evaluator, history);
+		this.maxBodyBytes = Integer.getInteger("calculator.maxBodyBytes", DEFAULT_MAX_BODY_BYTES);
+		this.executor = newRequestExecutor();
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(executor);
+		server.createContext("/evaluate", new EvaluateHandler());
+		server.createContext("/batch", new BatchHandler());
+		server.createContext("/session/", new SessionHandler());
+		if (history != null) {
+			server.createContext("/history", new HistoryHandler());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int cacheEntries = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		ResultCache cache = cacheEntries > 0 ? new ResultCache(cacheEntries, cacheEntries * 64L) : null;
+		HistoryTape history = args.length > 2 ? new HistoryTape(new File(args[2])) : null;
+		if (history != null) {
+			history.setFailureListener((expression, result, error) -> System.err
+					.println("Not on the history tape: " + expression + " = " + result + " (" + error.getMessage() + ")"));
+		}
+
+		CalculatorServer server = new CalculatorServer(port, new Evaluator(new ResultFormatter(3), cache), history);
+		if (CalculatorMetrics.ENABLED) {
+			CalculatorMetricsJmx.register();
+		}
+		if (!"false".equals(System.getProperty("calculator.jfr"))) {
+			CalculatorJfr.install();
+		}
+		server.start();
+		System.err.println("Calculator service listening on http://localhost:" + server.getPort());
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to the given delay for running ones.
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+		if (history != null) {
+			history.flush();
+		}
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Uses a virtual thread per request where the JDK offers it. Looked up
+	 * reflectively so the class still compiles and runs on older JDKs.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Evaluates one expression and puts it on the history tape, if there is one.
+	 */
+	private String evaluate(CharSequence expression) {
+		String result = evaluator.evaluate(expression);
+		if (history != null) {
+			history.record(expression, result); // A failure is counted by the tape; the client still gets its result
+		}
+		return result;
+	}
+
+	/**
+	 * POST /evaluate
+	 */
+	private class EvaluateHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!requireMethod(exchange, "POST")) {
+				return;
+			}
+			String body = readBody(exchange);
+			if (body != null) {
+				respond(exchange, 200, evaluate(body.trim()));
+			}
+		}
+	}
+
+	/**
+	 * POST /batch
+	 */
+	private class BatchHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!requireMethod(exchange, "POST")) {
+				return;
+			}
+			String body = readBody(exchange);
+			if (body == null) {
+				return;
+			}
+			StringBuilder results = new StringBuilder(body.length());
+
+			int start = 0;
+			while (start < body.length()) {
+				int end = body.indexOf('\n', start);
+				if (end < 0) {
+					end = body.length();
+				}
+				int lineEnd = end > start && body.charAt(end - 1) == '\r' ? end - 1 : end;
+				results.append(evaluate(body.subSequence(start, lineEnd))).append('\n');
+				start = end + 1;
+			}
+			respond(exchange, 200, results.toString());
+		}
+	}
+
+	/**
+	 * POST or DELETE /session/{id}
+	 */
+	private class SessionHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			String id = exchange.getRequestURI().getPath().substring("/session/".length());
+			if (id.isEmpty()) {
+				respond(exchange, 404, "Missing session id");
+				return;
+			}
+
+			if (exchange.getRequestMethod().equals("DELETE")) {
+				respond(exchange, sessions.remove(id) ? 200 : 404, "");
+				return;
+			}
+			if (!requireMethod(exchange, "POST")) {
+				return;
+			}
+
+			String body = readBody(exchange);
+			if (body == null) {
+				return;
+			}
+			body = body.trim();
+			String[] keys = body.isEmpty() ? new String[0] : body.split("\r?\n");
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = keys[i].trim();
+			}
+			respond(exchange, 200, sessions.userInput(id, keys));
+		}
+	}
+
+	/**
+	 * GET /history?prefix=...&amp;limit=...
+	 */
+	private class HistoryHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			if (!requireMethod(exchange, "GET")) {
+				return;
+			}
+			String prefix = "";
+			int limit = 100;
+			String query = exchange.getRequestURI().getRawQuery();
+			if (query != null) {
+				for (String parameter : query.split("&")) {
+					int equals = parameter.indexOf('=');
+					String name = equals < 0 ? parameter : parameter.substring(0, equals);
+					String value;
+					try {
+						value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+					} catch (IllegalArgumentException e) {
+						respond(exchange, 400, "Malformed query: " + e.getMessage());
+						return;
+					}
+					if (name.equals("prefix")) {
+						prefix = value;
+					} else if (name.equals("limit")) {
+						try {
+							limit = Integer.parseInt(value);
+						} catch (NumberFormatException e) {
+							respond(exchange, 400, "limit must be a number");
+							return;
+						}
+					}
+				}
+			}
+
+			StringBuilder lines = new StringBuilder();
+			for (HistoryTape.Entry entry : history.searchPrefix(prefix, limit)) {
+				lines.append(entry).append('\n');
+			}
+			respond(exchange, 200, lines.toString());
+		}
+	}
+
+	private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+		if (exchange.getRequestMethod().equals(method)) {
+			return true;
+		}
+		exchange.getResponseHeaders().set("Allow", method);
+		respond(exchange, 405, "Use " + method);
+		return false;
+	}
+
+	/**
+	 * Reads the request body, or answers 413 if it is longer than maxBodyBytes.
+	 *
+	 * @return the body, or null if it was too large and has been answered
+	 */
+	private String readBody(HttpExchange exchange) throws IOException {
+		String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+		try (InputStream in = exchange.getRequestBody()) {
+			if (declared != null) {
+				try {
+					if (Long.parseLong(declared.trim()) > maxBodyBytes) {
+						respondTooLarge(exchange);
+						return null;
+					}
+				} catch (NumberFormatException e) {
+					// Let the body itself be counted
+				}
+			}
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				if (body.size() + read > maxBodyBytes) {
+					respondTooLarge(exchange);
+					return null;
+				}
+				body.write(buffer, 0, read);
+			}
+			return new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private void respondTooLarge(HttpExchange exchange) throws IOException {
+		respond(exchange, 413, "Request body is larger than " + maxBodyBytes + " bytes");
+	}
+
+	private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+}
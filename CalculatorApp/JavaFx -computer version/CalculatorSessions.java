@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CalculatorSessions keeps many independent calculator sessions in one JVM, for
+ * example one per user of a service. Every session is a small CalculatorLogic;
+ * they all share one thread-safe Evaluator.
+ *
+ * Lookups are lock-free (ConcurrentHashMap). Keystrokes for the same session are
+ * serialized by locking that session only, so different sessions never wait on
+ * each other.
+ *
+ * Sessions are created by the first keystroke sent to a new id, so the number
+ * of them is bounded: when a new session would exceed maxSessions, sessions
+ * idle for longer than the idle timeout are ended, or if there are none, about
+ * the sixteenth of them idle the longest (judged from a sample of their idle
+ * times). Either way one scan makes room for many new sessions, so a steady
+ * flow of new ids costs O(1) per session on average, not a scan each. Sessions
+ * created at the same moment by several threads can exceed the limit by that
+ * many until the next new session.
+ */
+public class CalculatorSessions {
+
+	public static final int DEFAULT_MAX_SESSIONS = 10_000;
+	public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+	private static final int EVICT_SHARE = 16; // A full map without idle sessions ends 1 in this many
+	private static final int SAMPLE_SIZE = 256; // Idle times the eviction threshold is picked from
+
+	private final Evaluator evaluator;
+	private final HistoryTape history; // May be null
+	private final int maxSessions;
+	private final long idleNanos;
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+	private final Object evictionLock = new Object(); // Taken only when a new session finds the map full
+	private long evictions = 0; // Guarded by evictionLock
+	private final long[] sample = new long[SAMPLE_SIZE]; // Guarded by evictionLock
+
+	/**
+	 * @param evaluator the evaluator shared by all sessions
+	 */
+	public CalculatorSessions(Evaluator evaluator) {
+		this(evaluator, null);
+	}
+
+	/**
+	 * @param evaluator the evaluator shared by all sessions
+	 * @param history   tape that every session's calculations are appended to, or
+	 *                  null
+	 */
+	public CalculatorSessions(Evaluator evaluator, HistoryTape history) {
+		this(evaluator, history, DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_MILLIS);
+	}
+
+	/**
+	 * @param evaluator   the evaluator shared by all sessions
+	 * @param history     tape that every session's calculations are appended to,
+	 *                    or null
+	 * @param maxSessions how many sessions are kept
+	 * @param idleMillis  how long a session may go without keystrokes before it
+	 *                    is ended to make room for a new one
+	 */
+	public CalculatorSessions(Evaluator evaluator, HistoryTape history, int maxSessions, long idleMillis) {
+		if (evaluator == null) {
+			throw new IllegalArgumentException("evaluator must not be null");
+		}
+		if (maxSessions < 1 || idleMillis < 0) {
+			throw new IllegalArgumentException("maxSessions must be positive and idleMillis not negative");
+		}
+		this.evaluator = evaluator;
+		this.history = history;
+		this.maxSessions = maxSessions;
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+	}
+
+	public Evaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Sends one button press to a session, creating the session if needed.
+	 *
+	 * @param sessionId the session
+	 * @param text      the button label (e.g. "7", "+", "=", "DEL")
+	 * @return the updated display string of that session
+	 */
+	public String userInput(String sessionId, String text) {
+		CalculatorLogic session = session(sessionId);
+		synchronized (session) {
+			return session.userInput(text);
+		}
+	}
+
+	/**
+	 * Sends a sequence of button presses to a session as one unit, so no other
+	 * caller's keys are interleaved with them.
+	 *
+	 * @param sessionId the session
+	 * @param keys      the button labels, in order
+	 * @return the display string after the last key
+	 */
+	public String userInput(String sessionId, String[] keys) {
+		CalculatorLogic session = session(sessionId);
+		synchronized (session) {
+			String display = "";
+			for (String key : keys) {
+				display = session.userInput(key);
+			}
+			return display;
+		}
+	}
+
+	/**
+	 * Ends a session and frees its state.
+	 *
+	 * @param sessionId the session
+	 * @return true if the session existed
+	 */
+	public boolean remove(String sessionId) {
+		return sessions.remove(sessionId) != null;
+	}
+
+	public boolean contains(String sessionId) {
+		return sessions.containsKey(sessionId);
+	}
+
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * @return how many sessions were ended to make room for new ones
+	 */
+	public long getEvictions() {
+		synchronized (evictionLock) {
+			return evictions;
+		}
+	}
+
+	/**
+	 * Returns a session, creating it if needed, and marks it as used now.
+	 */
+	private CalculatorLogic session(String sessionId) {
+		Session session = sessions.get(sessionId);
+		if (session == null) {
+			if (sessions.size() >= maxSessions) {
+				makeRoom();
+			}
+			session = sessions.computeIfAbsent(sessionId, id -> new Session(new CalculatorLogic(evaluator, history)));
+		}
+		session.lastUsed = System.nanoTime();
+		return session.logic;
+	}
+
+	/**
+	 * Ends the sessions idle for longer than the timeout, or if there are none,
+	 * about 1 in EVICT_SHARE of them, those idle the longest.
+	 */
+	private void makeRoom() {
+		synchronized (evictionLock) {
+			if (sessions.size() < maxSessions) {
+				return; // Another thread made room
+			}
+			long now = System.nanoTime();
+			int stride = Math.max(1, sessions.size() / SAMPLE_SIZE);
+			int seen = 0;
+			int sampled = 0;
+			int removed = 0;
+			for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+				long idle = now - entry.getValue().lastUsed;
+				if (idle > idleNanos) {
+					if (sessions.remove(entry.getKey(), entry.getValue())) {
+						removed++;
+					}
+				} else if (seen++ % stride == 0 && sampled < SAMPLE_SIZE) {
+					sample[sampled++] = idle;
+				}
+			}
+			if (removed == 0 && sampled > 0) {
+				Arrays.sort(sample, 0, sampled);
+				long threshold = sample[sampled - 1 - (sampled - 1) / EVICT_SHARE];
+				for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+					if (now - entry.getValue().lastUsed >= threshold
+							&& sessions.remove(entry.getKey(), entry.getValue())) {
+						removed++;
+					}
+				}
+			}
+			evictions += removed;
+		}
+	}
+
+	private static class Session {
+		final CalculatorLogic logic;
+		volatile long lastUsed = System.nanoTime(); // System.nanoTime() of the latest keystroke
+
+		Session(CalculatorLogic logic) {
+			this.logic = logic;
+		}
+	}
+}
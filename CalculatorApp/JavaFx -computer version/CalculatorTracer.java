@@ -0,0 +1,42 @@
+/**
+ * CalculatorTracer is told when each stage of CalculatorLogic starts and ends,
+ * so that a platform can record them in its own tracing system (the desktop
+ * app records JDK Flight Recorder events, see CalculatorJfr). Install one with
+ * {@link CalculatorLogic#setTracer(CalculatorTracer)}; with none installed
+ * the stages cost one field read each.
+ *
+ * Implementations are called from every session's thread and must be
+ * thread-safe.
+ */
+public interface CalculatorTracer {
+
+	/** CalculatorLogic.press (and userInput): one keystroke. */
+	int USER_INPUT = 0;
+	/** "=": evaluating the expression and building the display. */
+	int DONE_INSERT_INPUT = 1;
+	/** Reading and evaluating the expression (Evaluator.compute and its kin). */
+	int EVALUATE = 2;
+	/** CalculatorLogic.applyPrecedence. */
+	int APPLY_PRECEDENCE = 3;
+
+	/**
+	 * A stage starts.
+	 *
+	 * @param stage one of the constants above
+	 * @return an object that is passed to {@link #end}, or null if the stage is
+	 *         not being recorded (end is then not called)
+	 */
+	Object begin(int stage);
+
+	/**
+	 * The stage that returned span ends.
+	 *
+	 * @param span             what {@link #begin(int)} returned
+	 * @param expressionLength length of the expression when the stage ended, or
+	 *                         -1 if the stage had none (applyPrecedence)
+	 * @param tokenCount       numbers and operators in the expression
+	 * @param outcome          the stage's result: an error message such as
+	 *                         "Syntax Error", or any other text on success
+	 */
+	void end(Object span, int expressionLength, int tokenCount, String outcome);
+}
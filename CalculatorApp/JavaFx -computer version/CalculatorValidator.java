@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * Enum representing different types of calculator errors.
  */
@@ -15,7 +13,7 @@ enum CalculatorError {
 	 * Multiple decimal points in a number (e.g. 3.1.4) 2. Invalid operator usage
 	 * (e.g. 5 ++ 3, 2*) 3. Expression starts or ends with an operator (e.g. +5, 2+)
 	 * 4. Unrecognized characters in input (e.g. letters or symbols like $) 5. Empty
-	 * input followed by "="
+	 * input followed by "=" (CalculatorValidator.validate tells them apart)
 	 */
 	SYNTAX_ERROR("Syntax Error");
 
@@ -38,6 +36,32 @@ enum CalculatorError {
  */
 public class CalculatorValidator {
 
+	/** {@link #validate(CharSequence, boolean)} found no error. */
+	public static final int VALID = 0;
+	/** Nothing to evaluate (only ignored characters, or nothing at all). */
+	public static final int EMPTY_INPUT = 1;
+	/** A number has a second decimal point (e.g. 3.1.4). */
+	public static final int MULTIPLE_DECIMAL_POINTS = 2;
+	/** An operator where a number should be (e.g. 5++3, 5+*3, 5---3). */
+	public static final int CONSECUTIVE_OPERATORS = 3;
+	/** The expression starts with an operator other than a minus sign (e.g. +5). */
+	public static final int LEADING_OPERATOR = 4;
+	/** The expression ends with an operator (e.g. 2+). */
+	public static final int TRAILING_OPERATOR = 5;
+	/** A character the calculator does not know (e.g. $). */
+	public static final int UNRECOGNIZED_CHARACTER = 6;
+	/** A sign or decimal point without digits (e.g. 2+-, .). */
+	public static final int MISSING_DIGITS = 7;
+	/** Parentheses, ^ or a function that do not parse (e.g. 2*(3, sqrt 4, 5(2)). */
+	public static final int INVALID_TREE_SYNTAX = 8;
+
+	private static final ThreadLocal<ExpressionTree> trees = new ThreadLocal<ExpressionTree>() {
+		@Override
+		protected ExpressionTree initialValue() {
+			return new ExpressionTree(); // Not ThreadLocal.withInitial, which Android only has from API 26
+		}
+	};
+
 	/**
 	 * Checks if the input expression contains two consecutive operators.
 	 *
@@ -59,12 +83,154 @@ public class CalculatorValidator {
 	 * Validates the operator-to-number ratio. A valid expression should have
 	 * exactly one fewer operator than numbers.
 	 *
-	 * @param numbers   list of parsed numbers
-	 * @param operators list of parsed operators
+	 * @param numberCount   how many numbers were parsed
+	 * @param operatorCount how many operators were parsed
 	 * @return true if the ratio is valid, false otherwise
 	 */
-	public static boolean hasValidOperatorNumberRatio(ArrayList<Double> numbers, ArrayList<Character> operators) {
-		return operators.size() == numbers.size() - 1;
+	public static boolean hasValidOperatorNumberRatio(int numberCount, int operatorCount) {
+		return operatorCount == numberCount - 1;
+	}
+
+	/**
+	 * Validates an expression with the rules Evaluator applies: unknown characters
+	 * are skipped, and the expression is valid exactly when Evaluator does not
+	 * report a Syntax Error.
+	 *
+	 * @see #validate(CharSequence, boolean)
+	 */
+	public static long validate(CharSequence input) {
+		return validate(input, false);
+	}
+
+	/**
+	 * Checks the syntax of an expression in one pass, without evaluating it,
+	 * throwing or allocating anything. The result packs the kind of the first
+	 * error and its position; read them with {@link #errorCode(long)} and
+	 * {@link #errorPosition(long)}. A valid expression gives 0.
+	 *
+	 * At the first parenthesis, ^ or function name the expression is parsed with
+	 * an {@link ExpressionTree} instead, as Evaluator does; if that fails, the
+	 * error is {@link #INVALID_TREE_SYNTAX} at that character.
+	 *
+	 * @param input  the expression (e.g. "3+5*2")
+	 * @param strict whether unknown characters are errors
+	 *               ({@link #UNRECOGNIZED_CHARACTER}) rather than skipped
+	 * @return the packed error code and position, or 0 if valid
+	 */
+	public static long validate(CharSequence input, boolean strict) {
+		int length = input.length();
+		int numberStart = -1; // First sign, digit or point of the current number
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		boolean seenSign = false;
+		int lastOperator = -1;
+		char previous = 0;
+		long numberError = VALID; // Reported where the number ends, as Evaluator does; tree syntax before that wins
+
+		for (int i = 0; i < length; i++) {
+			char c = input.charAt(i);
+
+			if (Character.isDigit(c)) {
+				if ((c < '0' || c > '9') && numberError == VALID) {
+					numberError = error(UNRECOGNIZED_CHARACTER, i); // Other scripts' digits do not parse
+				}
+				seenDigit = true;
+			} else if (c == '.') {
+				if (seenPoint && numberError == VALID) {
+					numberError = error(MULTIPLE_DECIMAL_POINTS, i);
+				}
+				seenPoint = true;
+			} else if (c == '-' && (i == 0 || isOperator(previous))) {
+				if (seenSign && numberError == VALID) {
+					numberError = error(CONSECUTIVE_OPERATORS, i); // e.g. 5---3
+				}
+				seenSign = true;
+			} else if (isOperator(c)) {
+				if (numberError != VALID) {
+					return numberError;
+				}
+				if (numberStart < 0) {
+					return error(lastOperator < 0 ? LEADING_OPERATOR : CONSECUTIVE_OPERATORS, i);
+				}
+				if (!seenDigit) {
+					return error(MISSING_DIGITS, numberStart);
+				}
+				numberStart = -1;
+				seenDigit = false;
+				seenPoint = false;
+				seenSign = false;
+				lastOperator = i;
+				previous = c;
+				continue;
+			} else {
+				if (ExpressionTree.isTreeSyntax(input, i)) {
+					return validateTree(input, i, strict);
+				}
+				if (strict) {
+					return error(UNRECOGNIZED_CHARACTER, i);
+				}
+				previous = c;
+				continue;
+			}
+
+			if (numberStart < 0) {
+				numberStart = i;
+			}
+			previous = c;
+		}
+
+		if (numberError != VALID) {
+			return numberError;
+		}
+		if (numberStart < 0) {
+			return lastOperator < 0 ? error(EMPTY_INPUT, 0) : error(TRAILING_OPERATOR, lastOperator);
+		}
+		if (!seenDigit) {
+			return error(MISSING_DIGITS, numberStart);
+		}
+		return VALID;
+	}
+
+	/**
+	 * Validates an expression from its first tree syntax on, which is at
+	 * treeStart.
+	 */
+	private static long validateTree(CharSequence input, int treeStart, boolean strict) {
+		if (!trees.get().parse(input)) {
+			return error(INVALID_TREE_SYNTAX, treeStart);
+		}
+		if (strict) {
+			for (int i = treeStart; i < input.length(); i++) {
+				char c = input.charAt(i);
+				int name = ExpressionTree.functionNameLength(input, i);
+				if (name > 0) {
+					i += name - 1;
+				} else if (!(Character.isDigit(c) || c == '.' || isOperator(c) || c == '(' || c == ')' || c == '^')) {
+					return error(UNRECOGNIZED_CHARACTER, i);
+				}
+			}
+		}
+		return VALID;
+	}
+
+	/**
+	 * @param result a value returned by validate
+	 * @return the error code, e.g. {@link #TRAILING_OPERATOR}, or {@link #VALID}
+	 */
+	public static int errorCode(long result) {
+		return (int) result;
+	}
+
+	/**
+	 * @param result a value returned by validate
+	 * @return the index of the character the error was found at (0 if valid)
+	 */
+	public static int errorPosition(long result) {
+		return (int) (result >>> 32);
+	}
+
+	private static long error(int code, int position) {
+		return ((long) position << 32) | code;
 	}
 
 	/**
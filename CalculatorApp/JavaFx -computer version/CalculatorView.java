@@ -0,0 +1,61 @@
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Cursor;
+import javafx.scene.Parent;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+/**
+ * CalculatorView builds the same scene graph as MyProject.fxml in plain code,
+ * for the fast-startup mode: no FXML is parsed and no controller fields are
+ * injected by reflection. MyProject.fxml stays the layout that is edited in
+ * Scene Builder; a change there has to be repeated here.
+ */
+public class CalculatorView {
+
+	private CalculatorView() {
+	}
+
+	/**
+	 * Builds the view and hands its text field and grid to the controller, as
+	 * FXMLLoader would.
+	 *
+	 * @param controller controller that fills the grid and handles its buttons
+	 * @return the root of the scene graph
+	 */
+	public static Parent build(MyProjectController controller) {
+		TextField textField = new TextField();
+		textField.setEditable(false);
+		textField.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+		textField.setMinHeight(35.0);
+		textField.setPrefHeight(15.0);
+		textField.setPrefWidth(575.0);
+		textField.setStyle("-fx-background-color: WHITE; -fx-border-color: #999999; -fx-border-width: 1;");
+		textField.setCursor(Cursor.DEFAULT);
+		VBox.setVgrow(textField, Priority.ALWAYS);
+		VBox.setMargin(textField, new Insets(15.0, 15.0, 0, 15.0));
+
+		// Row and column constraints are set by the controller
+		GridPane buttonGrid = new GridPane();
+		buttonGrid.setAlignment(Pos.CENTER);
+		buttonGrid.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
+		buttonGrid.setPrefHeight(244.0);
+		buttonGrid.setPrefWidth(600.0);
+		buttonGrid.setStyle("-fx-background-color: #f0f0f0; -fx-border-color: #999999; -fx-border-width: 1;");
+		buttonGrid.setCursor(Cursor.HAND);
+		buttonGrid.setPadding(new Insets(10.0));
+		VBox.setVgrow(buttonGrid, Priority.ALWAYS);
+		VBox.setMargin(buttonGrid, new Insets(15.0, 20.0, 20.0, 20.0));
+
+		VBox root = new VBox(textField, buttonGrid);
+		root.setMinSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+		root.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+		root.setPrefSize(600.0, 400.0);
+
+		controller.initialize(textField, buttonGrid);
+		return root;
+	}
+}
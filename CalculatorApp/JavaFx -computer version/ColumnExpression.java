@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ColumnExpression evaluates one expression template with named variables (e.g.
+ * "a*b-c/d") over whole columns of values, one result per row.
+ *
+ * The template is tokenized once with the calculator's rules (+ - * /, * and /
+ * before + and -, a '-' at the start or right after an operator is a sign) and
+ * turned into a short list of steps. The steps are then run over blocks of rows
+ * with the jdk.incubator.vector API when the JVM was started with
+ * --add-modules jdk.incubator.vector, and with a plain loop otherwise. Both
+ * paths give bit-identical results to evaluating each row on its own.
+ *
+ * Rows that divide by zero or whose result is not finite are Math Errors: their
+ * bit is set in an error mask (bit row % 64 of word row / 64) and NaN is written
+ * as their result. Nothing is thrown per row.
+ */
+public final class ColumnExpression {
+
+	static final byte MUL = 0;
+	static final byte DIV = 1;
+	static final byte ADD = 2; // Finishes the current term and starts a new one
+
+	private static final int BLOCK_ROWS = 1024; // Rows per pass over the steps; a multiple of any vector length
+
+	private static final ColumnKernel KERNEL = loadKernel(); // Null when the vector API is not there
+
+	// The steps are also read by ExpressionCompiler
+
+	private final String[] variables; // In order of first appearance
+	final byte[] steps; // steps[0] is unused: operand 0 starts the first term
+	final int[] slots; // Column index of each operand, or -1 for a constant
+	final boolean[] negate; // Whether each column operand is negated
+	final double[] constants; // Value of each constant operand (sign included)
+
+	private ColumnExpression(String[] variables, byte[] steps, int[] slots, boolean[] negate, double[] constants) {
+		this.variables = variables;
+		this.steps = steps;
+		this.slots = slots;
+		this.negate = negate;
+		this.constants = constants;
+	}
+
+	/**
+	 * Parses a template. Variable names start with a letter or '_' and go on with
+	 * letters, digits or '_'; anything else between operators must be a number.
+	 *
+	 * @param template the expression (e.g. "a*b-c/d" or "price*-1.5+fee")
+	 * @return the compiled expression
+	 * @throws IllegalArgumentException if the template is not a valid expression
+	 */
+	public static ColumnExpression compile(String template) {
+		List<String> names = new ArrayList<>();
+		int length = template.length();
+		int count = 0;
+		byte[] steps = new byte[length / 2 + 1];
+		int[] slots = new int[steps.length];
+		boolean[] negate = new boolean[steps.length];
+		double[] constants = new double[steps.length];
+
+		char op = 0; // Operator before the current operand (0 for the first)
+		int i = 0;
+		while (true) {
+			boolean negative = false;
+			if (i < length && template.charAt(i) == '-') {
+				negative = true;
+				i++;
+			}
+			int start = i;
+			while (i < length && !CalculatorValidator.isOperator(template.charAt(i))) {
+				i++;
+			}
+			String operand = template.substring(start, i).trim();
+			if (operand.isEmpty()) {
+				throw syntaxError(template);
+			}
+
+			// A '-' operator starts a negated term, the same as a '+' before a negative
+			// operand
+			boolean negated = op == '-' ? !negative : negative;
+			steps[count] = op == '*' ? MUL : op == '/' ? DIV : ADD;
+			if (isName(operand)) {
+				int slot = names.indexOf(operand);
+				if (slot < 0) {
+					slot = names.size();
+					names.add(operand);
+				}
+				slots[count] = slot;
+				negate[count] = negated;
+			} else {
+				double value = DecimalParser.parse(operand, 0, operand.length());
+				if (DecimalParser.isMalformed(value)) {
+					throw syntaxError(template);
+				}
+				slots[count] = -1;
+				constants[count] = negated ? -value : value;
+			}
+			count++;
+
+			if (i == length) {
+				break;
+			}
+			op = template.charAt(i++);
+		}
+
+		return new ColumnExpression(names.toArray(new String[0]), Arrays.copyOf(steps, count),
+				Arrays.copyOf(slots, count), Arrays.copyOf(negate, count), Arrays.copyOf(constants, count));
+	}
+
+	/**
+	 * @return the variable names, in the order their columns are expected by
+	 *         {@link #evaluate(double[][], int, double[], long[])}
+	 */
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * @return whether evaluation uses the vector API in this JVM
+	 */
+	public static boolean isVectorized() {
+		return KERNEL != null;
+	}
+
+	/**
+	 * @param rows number of rows
+	 * @return the number of longs an error mask for that many rows needs
+	 */
+	public static int maskLength(int rows) {
+		return (rows + 63) >>> 6;
+	}
+
+	/**
+	 * Checks a row of an error mask filled by an evaluate call.
+	 */
+	public static boolean isMathError(long[] errors, int row) {
+		return (errors[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Evaluates the expression with the columns given by name.
+	 *
+	 * @see #evaluate(double[][], int, double[], long[])
+	 */
+	public int evaluate(Map<String, double[]> columns, int rows, double[] out, long[] errors) {
+		double[][] ordered = new double[variables.length][];
+		for (int v = 0; v < variables.length; v++) {
+			ordered[v] = columns.get(variables[v]);
+			if (ordered[v] == null) {
+				throw new IllegalArgumentException("No column for variable " + variables[v]);
+			}
+		}
+		return evaluate(ordered, rows, out, errors);
+	}
+
+	/**
+	 * Evaluates the expression for rows [0, rows).
+	 *
+	 * @param columns one column per variable, in {@link #getVariables()} order
+	 * @param rows    number of rows to evaluate
+	 * @param out     receives the result of each row (NaN for Math Errors)
+	 * @param errors  receives the Math Error mask, at least
+	 *                {@link #maskLength(int)} longs
+	 * @return number of rows with a Math Error
+	 */
+	public int evaluate(double[][] columns, int rows, double[] out, long[] errors) {
+		if (columns.length != variables.length) {
+			throw new IllegalArgumentException("Expected " + variables.length + " columns, got " + columns.length);
+		}
+		for (double[] column : columns) {
+			if (column.length < rows) {
+				throw new IllegalArgumentException("A column is shorter than " + rows + " rows");
+			}
+		}
+		if (out.length < rows || errors.length < maskLength(rows)) {
+			throw new IllegalArgumentException("out or errors is too small for " + rows + " rows");
+		}
+		Arrays.fill(errors, 0, maskLength(rows), 0L);
+
+		double[] term = new double[BLOCK_ROWS];
+		double[] sum = new double[BLOCK_ROWS];
+		for (int base = 0; base < rows; base += BLOCK_ROWS) {
+			int length = Math.min(BLOCK_ROWS, rows - base);
+			int vectorLength = KERNEL != null ? KERNEL.loopBound(length) : 0;
+			if (vectorLength > 0) {
+				KERNEL.evaluateBlock(steps, slots, negate, constants, columns, base, vectorLength, term, sum, out,
+						errors);
+			}
+			if (vectorLength < length) {
+				evaluateBlock(columns, base + vectorLength, length - vectorLength, term, sum, out, errors);
+			}
+		}
+
+		int errorCount = 0;
+		for (int w = 0; w < maskLength(rows); w++) {
+			errorCount += Long.bitCount(errors[w]);
+		}
+		return errorCount;
+	}
+
+	/**
+	 * Evaluates a single row.
+	 *
+	 * @param vars the variable values, in {@link #getVariables()} order
+	 * @return the result; not finite for a Math Error (division by zero always
+	 *         leaves a term that is infinite or NaN)
+	 */
+	public double evaluateRow(double[] vars) {
+		double sum = 0;
+		boolean hasSum = false;
+		double term = operand(vars, 0);
+
+		for (int k = 1; k < steps.length; k++) {
+			double x = operand(vars, k);
+			switch (steps[k]) {
+			case MUL:
+				term *= x;
+				break;
+			case DIV:
+				term /= x;
+				break;
+			default:
+				sum = hasSum ? sum + term : term;
+				hasSum = true;
+				term = x;
+				break;
+			}
+		}
+		return hasSum ? sum + term : term;
+	}
+
+	private double operand(double[] vars, int k) {
+		if (slots[k] < 0) {
+			return constants[k];
+		}
+		return negate[k] ? -vars[slots[k]] : vars[slots[k]];
+	}
+
+	/**
+	 * Plain loops over rows [base, base+length), used for the rows left after the
+	 * last full vector and when the vector API is not available. Each step is one
+	 * loop over the block, which the JIT can still vectorize on its own.
+	 */
+	private void evaluateBlock(double[][] columns, int base, int length, double[] term, double[] sum, double[] out,
+			long[] errors) {
+		load(columns, 0, base, length, term);
+		boolean hasSum = false;
+
+		for (int k = 1; k < steps.length; k++) {
+			switch (steps[k]) {
+			case MUL:
+				if (slots[k] < 0) {
+					for (int j = 0; j < length; j++) {
+						term[j] *= constants[k];
+					}
+				} else {
+					double[] column = columns[slots[k]];
+					double sign = negate[k] ? -1 : 1;
+					for (int j = 0; j < length; j++) {
+						term[j] *= sign * column[base + j];
+					}
+				}
+				break;
+			case DIV:
+				if (slots[k] < 0) {
+					if (constants[k] == 0) {
+						markAll(base, length, errors);
+					}
+					for (int j = 0; j < length; j++) {
+						term[j] /= constants[k];
+					}
+				} else {
+					double[] column = columns[slots[k]];
+					double sign = negate[k] ? -1 : 1;
+					for (int j = 0; j < length; j++) {
+						double x = column[base + j];
+						if (x == 0) {
+							errors[(base + j) >>> 6] |= 1L << (base + j);
+						}
+						term[j] /= sign * x;
+					}
+				}
+				break;
+			default:
+				if (hasSum) {
+					for (int j = 0; j < length; j++) {
+						sum[j] += term[j];
+					}
+				} else {
+					System.arraycopy(term, 0, sum, 0, length);
+					hasSum = true;
+				}
+				load(columns, k, base, length, term);
+				break;
+			}
+		}
+
+		for (int j = 0; j < length; j++) {
+			int row = base + j;
+			double result = hasSum ? sum[j] + term[j] : term[j];
+			if (CalculatorValidator.isResultInvalid(result)) {
+				errors[row >>> 6] |= 1L << row;
+			}
+			out[row] = (errors[row >>> 6] & (1L << row)) != 0 ? Double.NaN : result;
+		}
+	}
+
+	/**
+	 * Copies operand k of rows [base, base+length) into target.
+	 */
+	private void load(double[][] columns, int k, int base, int length, double[] target) {
+		if (slots[k] < 0) {
+			Arrays.fill(target, 0, length, constants[k]);
+		} else if (negate[k]) {
+			double[] column = columns[slots[k]];
+			for (int j = 0; j < length; j++) {
+				target[j] = -column[base + j];
+			}
+		} else {
+			System.arraycopy(columns[slots[k]], base, target, 0, length);
+		}
+	}
+
+	private static void markAll(int base, int length, long[] errors) {
+		for (int row = base; row < base + length; row++) {
+			errors[row >>> 6] |= 1L << row;
+		}
+	}
+
+	private static boolean isName(String operand) {
+		char first = operand.charAt(0);
+		if (!Character.isLetter(first) && first != '_') {
+			return false;
+		}
+		for (int i = 1; i < operand.length(); i++) {
+			char c = operand.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static IllegalArgumentException syntaxError(String template) {
+		return new IllegalArgumentException(CalculatorError.SYNTAX_ERROR.getMessage() + ": " + template);
+	}
+
+	/**
+	 * The vector API is an incubator module that is only there when the JVM was
+	 * started with --add-modules jdk.incubator.vector. ColumnVectorKernel is the
+	 * only class that uses it and is compiled from its own directory, so it is
+	 * looked up by name: without it on the class path, evaluation stays scalar.
+	 */
+	private static ColumnKernel loadKernel() {
+		if (Boolean.getBoolean("calculator.scalarColumns")
+				|| !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			return null;
+		}
+		try {
+			ColumnKernel kernel = (ColumnKernel) Class.forName("ColumnVectorKernel").getDeclaredConstructor()
+					.newInstance();
+			return kernel.loopBound(Integer.MAX_VALUE) > 0 ? kernel : null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+}
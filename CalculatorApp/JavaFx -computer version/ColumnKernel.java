@@ -0,0 +1,20 @@
+/**
+ * Evaluates a block of {@link ColumnExpression} rows at once. The one
+ * implementation, ColumnVectorKernel, needs the jdk.incubator.vector module and
+ * is compiled separately from the vector directory.
+ */
+interface ColumnKernel {
+
+	/**
+	 * @return the largest multiple of the vector length not above rows
+	 */
+	int loopBound(int rows);
+
+	/**
+	 * Evaluates rows [base, base+length), where length is a multiple of the vector
+	 * length. base is a multiple of it too, and the vector length divides 64, so
+	 * the error bits of each vector land in one word.
+	 */
+	void evaluateBlock(byte[] steps, int[] slots, boolean[] negate, double[] constants, double[][] columns,
+			int base, int length, double[] term, double[] sum, double[] out, long[] errors);
+}
@@ -0,0 +1,111 @@
+/**
+ * DecimalParser reads a decimal number straight out of a range of a
+ * CharSequence (e.g. the expression being typed), without copying it into a
+ * String first.
+ *
+ * Numbers with up to 16 significant digits and up to 22 decimals - which covers
+ * everything the calculator produces - are converted with a single exact
+ * division (Clinger's fast path), which is correctly rounded and therefore
+ * identical to Double.parseDouble. Anything else falls back to
+ * Double.parseDouble.
+ *
+ * A malformed number (e.g. "3.1.4", "-" or "") is reported by returning
+ * {@link #MALFORMED} instead of throwing.
+ */
+public final class DecimalParser {
+
+	/** Returned for malformed input. A well formed number never parses to NaN. */
+	public static final double MALFORMED = Double.NaN;
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53; // Larger longs may not convert to double exactly
+	private static final int MAX_DIGITS = 18; // A long holds any 18-digit number
+
+	private DecimalParser() {
+	}
+
+	/**
+	 * Checks a value returned by {@link #parse(CharSequence, int, int)}.
+	 *
+	 * @param value the parsed value
+	 * @return true if the input was malformed
+	 */
+	public static boolean isMalformed(double value) {
+		return Double.isNaN(value);
+	}
+
+	/**
+	 * Parses input[start, end) as a number, accepting the same text as
+	 * Double.parseDouble.
+	 *
+	 * @param input the text holding the number
+	 * @param start index of the first character
+	 * @param end   index after the last character
+	 * @return the number, or {@link #MALFORMED}
+	 */
+	public static double parse(CharSequence input, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && input.charAt(i) == '-') {
+			negative = true;
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0; // Significant digits in mantissa
+		int decimals = 0; // Digits after the decimal point
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+
+		for (; i < end; i++) {
+			char c = input.charAt(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (seenPoint) {
+					decimals++;
+				}
+				if (mantissa == 0 && c == '0') {
+					continue; // Leading zero
+				}
+				if (digits == MAX_DIGITS) {
+					return parseSlow(input, start, end);
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+			} else if (c == '.') {
+				if (seenPoint) {
+					return MALFORMED; // e.g. 3.1.4
+				}
+				seenPoint = true;
+			} else if (c == '-' || Character.isDigit(c)) {
+				// A second sign, or another script's digit: never valid, and cheaper to
+				// reject here than through Double.parseDouble's exception
+				return MALFORMED;
+			} else {
+				// Exponents, whitespace, ...
+				return parseSlow(input, start, end);
+			}
+		}
+
+		if (!seenDigit) {
+			return MALFORMED; // "", "-", "."
+		}
+		if (mantissa > MAX_EXACT_MANTISSA || decimals >= POWERS_OF_TEN.length) {
+			return parseSlow(input, start, end);
+		}
+
+		// Both operands are exact, so the division is correctly rounded
+		double value = decimals == 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+
+	private static double parseSlow(CharSequence input, int start, int end) {
+		try {
+			return Double.parseDouble(input.subSequence(start, end).toString());
+		} catch (NumberFormatException e) {
+			return MALFORMED;
+		}
+	}
+}
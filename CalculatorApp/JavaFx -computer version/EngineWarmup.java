@@ -0,0 +1,54 @@
+/**
+ * EngineWarmup runs typical keystroke sequences through throwaway calculator
+ * sessions on a low-priority background thread while the window is being
+ * built, so that the engine classes are loaded and their hot paths compiled
+ * before the user presses the first button.
+ *
+ * Only the default evaluator, which is stateless apart from the formatter, is
+ * touched; the warmed sessions are thrown away and leave no answer or history
+ * behind. They are not recorded, so the warmup does not show up in
+ * CalculatorMetrics or the JFR events.
+ */
+public class EngineWarmup implements Runnable {
+
+	private static final String[][] SEQUENCES = { { "1", "2", ".", "5", "+", "3", "*", "4", "=" },
+			{ "9", "/", "0", "=", "C" }, { "7", "-", "-", "2", "+/-", "DEL", "8", "=", "Ans", "*", "2", "=" },
+			{ "4", "5", "6", "/", "7", "+/-", "=", "+/-", "Ans" }, { "3", "+", "=", "C", "0", ".", "1", "*", "3" } };
+
+	private final int rounds;
+
+	/**
+	 * @param rounds how many times every sequence is typed
+	 */
+	public EngineWarmup(int rounds) {
+		this.rounds = rounds;
+	}
+
+	/**
+	 * Starts warming on a daemon thread of minimum priority.
+	 *
+	 * @return the started thread
+	 */
+	public static Thread start() {
+		Thread thread = new Thread(new EngineWarmup(500), "engine-warmup");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+
+	@Override
+	public void run() {
+		for (int i = 0; i < rounds; i++) {
+			for (String[] sequence : SEQUENCES) {
+				CalculatorLogic logic = new CalculatorLogic();
+				logic.setRecorded(false); // Not the user's keystrokes
+				for (String key : sequence) {
+					logic.userInput(key);
+					logic.getLivePreview();
+				}
+			}
+		}
+		StartupTimeline.mark(StartupTimeline.WARMUP_DONE);
+	}
+}
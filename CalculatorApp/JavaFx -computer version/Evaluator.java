@@ -0,0 +1,270 @@
+import java.util.concurrent.CancellationException;
+
+/**
+ * Evaluator turns a whole expression into its result in one call. It holds no
+ * per-call state, so a single instance is immutable and can be shared by any
+ * number of threads and calculator sessions.
+ *
+ * Evaluation is one left-to-right pass that keeps only the running sum and the
+ * pending * / term, which gives the same value as applying * and / first and
+ * then + and - (see {@link #applyMulDiv(double[], char[], int)}). Expressions
+ * with parentheses, ^ or functions are handed to an {@link ExpressionTree}
+ * when the pass reaches the first of them.
+ */
+public class Evaluator {
+
+	private static final int CANCEL_CHECK_MASK = 4095; // Interrupts are checked every 4096 numbers
+
+	// One reusable tree per thread, for the expressions the flat pass cannot read
+	private static final ThreadLocal<ExpressionTree> trees = new ThreadLocal<ExpressionTree>() {
+		@Override
+		protected ExpressionTree initialValue() {
+			return new ExpressionTree(); // Not ThreadLocal.withInitial, which Android only has from API 26
+		}
+	};
+
+	private final ResultFormatter formatter;
+	private final ResultCache cache; // Thread-safe, may be null
+
+	/**
+	 * Creates an evaluator that shows results with 3 decimals and has no cache.
+	 */
+	public Evaluator() {
+		this(new ResultFormatter(3), null);
+	}
+
+	/**
+	 * @param formatter how results are formatted
+	 * @param cache     cache consulted before evaluating, or null for none
+	 */
+	public Evaluator(ResultFormatter formatter, ResultCache cache) {
+		if (formatter == null) {
+			throw new IllegalArgumentException("formatter must not be null");
+		}
+		this.formatter = formatter;
+		this.cache = cache;
+	}
+
+	public ResultFormatter getFormatter() {
+		return formatter;
+	}
+
+	public ResultCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @return whether results are exact decimal results (see ExactEvaluator)
+	 *         rather than rounded double results
+	 */
+	public boolean isExact() {
+		return false;
+	}
+
+	/**
+	 * Evaluates an expression.
+	 *
+	 * @param expression the expression (e.g. "3+5*2")
+	 * @return formatted result string or error message
+	 * @throws CancellationException if the thread is interrupted while a long
+	 *                               expression is evaluated
+	 */
+	public String evaluate(CharSequence expression) {
+		if (cache == null) {
+			return compute(expression);
+		}
+
+		String key = expression.toString();
+		String result = cache.get(key);
+		if (result == null) {
+			result = compute(expression);
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Lets a long evaluation be abandoned: throws if the thread was interrupted.
+	 * Only looks every 4096 numbers, so short expressions are never affected.
+	 *
+	 * @param numbers how many numbers were read so far
+	 */
+	static void checkCancelled(int numbers) {
+		if ((numbers & CANCEL_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("evaluation interrupted");
+		}
+	}
+
+	/**
+	 * Checks whether a string returned by {@link #evaluate(CharSequence)} is an
+	 * error message rather than a number.
+	 */
+	public static boolean isError(String result) {
+		return result.equals(CalculatorError.SYNTAX_ERROR.getMessage())
+				|| result.equals(CalculatorError.MATH_ERROR.getMessage());
+	}
+
+	/**
+	 * Evaluates without the cache, in one pass with * and / before + and -. This
+	 * is where the reading rules of the flat syntax live:
+	 * <ul>
+	 * <li>a '-' at the start or right after an operator (+ - * /) is the sign of
+	 * the number that follows; any other operator there, or a second sign, makes
+	 * the number malformed</li>
+	 * <li>a number is digits with at most one '.' (see DecimalParser)</li>
+	 * <li>other characters are ignored, unless they start tree syntax
+	 * (parentheses, ^ or a function), which goes to
+	 * {@link #computeTree(CharSequence)}</li>
+	 * <li>empty input, a malformed number or a trailing operator is a Syntax
+	 * Error, which wins over a division by zero anywhere in the input</li>
+	 * </ul>
+	 * LiveEvaluation, CalculatorValidator and ExpressionTree follow the same
+	 * rules. ExactEvaluator overrides it.
+	 */
+	protected String compute(CharSequence input) {
+		int length = input.length();
+		double sum = 0; // Sum of the finished additive terms
+		boolean hasSum = false;
+		double term = 0; // The term being multiplied / divided
+		char pendingOp = 0; // Operator before the current number (0 for the first)
+		boolean divideByZero = false;
+		int numberStart = 0;
+		boolean skipped = false; // Whether the current number holds ignored characters
+		int numbers = 0;
+
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? input.charAt(i) : 0;
+
+			if (i < length) {
+				if (Character.isDigit(c) || c == '.'
+						|| (c == '-' && (i == 0 || CalculatorValidator.isOperator(input.charAt(i - 1))))) {
+					continue;
+				}
+				if (!CalculatorValidator.isOperator(c)) {
+					if (ExpressionTree.isTreeSyntax(input, i)) {
+						return computeTree(input);
+					}
+					skipped = true;
+					continue;
+				}
+			} else if (numberStart == length) {
+				break; // Nothing after the last operator
+			}
+
+			double number = parseNumber(input, numberStart, i, skipped);
+			if (DecimalParser.isMalformed(number)) {
+				return CalculatorError.SYNTAX_ERROR.getMessage();
+			}
+			numbers++;
+			checkCancelled(numbers);
+
+			switch (pendingOp) {
+			case '*':
+				term *= number;
+				break;
+			case '/':
+				if (number == 0) {
+					divideByZero = true; // Reported once the whole input is known to be valid
+				} else {
+					term /= number;
+				}
+				break;
+			default:
+				if (numbers > 1) {
+					sum = hasSum ? sum + term : term;
+					hasSum = true;
+				}
+				term = pendingOp == '-' ? -number : number;
+				break;
+			}
+
+			pendingOp = c;
+			numberStart = i + 1;
+			skipped = false;
+		}
+
+		if (numbers == 0 || numberStart == length) {
+			return CalculatorError.SYNTAX_ERROR.getMessage(); // Empty, or ends with an operator
+		}
+		if (divideByZero) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+
+		double result = hasSum ? sum + term : term;
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		return formatter.format(result);
+	}
+
+	/**
+	 * Evaluates an expression with parentheses, ^ or functions. Syntax errors come
+	 * before Math Errors, as in the flat pass; sqrt and ln outside their domain
+	 * are Math Errors.
+	 */
+	protected String computeTree(CharSequence input) {
+		ExpressionTree tree = trees.get();
+		if (!tree.parse(input)) {
+			return CalculatorError.SYNTAX_ERROR.getMessage();
+		}
+		double result = tree.evaluate();
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		return formatter.format(result);
+	}
+
+	/**
+	 * Parses input[start, end) as a number, dropping ignored characters first if
+	 * there are any. Also used by ParallelEvaluator and ExactEvaluator.
+	 */
+	static double parseNumber(CharSequence input, int start, int end, boolean skipped) {
+		if (!skipped) {
+			return DecimalParser.parse(input, start, end);
+		}
+
+		StringBuilder number = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char c = input.charAt(i);
+			if (Character.isDigit(c) || c == '.' || c == '-') {
+				number.append(c);
+			}
+		}
+		return DecimalParser.parse(number, 0, number.length());
+	}
+
+	/**
+	 * Applies multiplication and division operations first. The front of the
+	 * arrays is used as a stack of additive terms: a * or / folds into the term on
+	 * top, a + or - pushes a new term. Since the stack never grows faster than the
+	 * input is read, this runs in place in linear time.
+	 *
+	 * @param nums    numbers, nums[0..opCount]
+	 * @param ops     operators, ops[0..opCount-1]
+	 * @param opCount number of operators
+	 * @return number of + and - operators left, or -1 on division by zero
+	 */
+	public static int applyMulDiv(double[] nums, char[] ops, int opCount) {
+		int top = 0; // Index of the term currently being multiplied / divided
+		for (int i = 0; i < opCount; i++) {
+			char op = ops[i];
+			double right = nums[i + 1];
+
+			if (op == '*') {
+				nums[top] *= right;
+			} else if (op == '/') {
+				if (right == 0) {
+					return -1;
+				}
+				nums[top] /= right;
+			} else {
+				// Start a new additive term
+				top++;
+				nums[top] = right;
+				ops[top - 1] = op;
+			}
+		}
+
+		return top;
+	}
+}
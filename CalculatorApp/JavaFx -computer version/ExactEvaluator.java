@@ -0,0 +1,321 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ExactEvaluator is an Evaluator whose results are the exact decimal results,
+ * rounded half up to the shown number of decimals - e.g. "43.1005-25.826"
+ * gives 17.275, where double arithmetic gives 17.274499999999996 and so 17.274.
+ *
+ * Every expression is first evaluated with doubles while keeping a bound on how
+ * far the double can be from the exact value. If every value within that bound
+ * rounds to the same shown digits, those digits are the exact answer. Only
+ * otherwise - typically when the exact result lies on or next to a rounding
+ * boundary - is the expression evaluated again with BigDecimal. Division
+ * there is rounded to the given MathContext; everything else is exact.
+ *
+ * Math Errors are the same as for Evaluator: division by zero, or a result too
+ * large for a double. Expressions with parentheses, ^ or functions have no
+ * exact path: they are evaluated with doubles, exactly as Evaluator does.
+ * Instances are thread-safe.
+ */
+public class ExactEvaluator extends Evaluator {
+
+	private static final double MAX_FAST_SCALED = 2251799813685248.0; // 2^51: +0.5 and floor are still exact
+
+	private final MathContext divisionContext;
+	private final int decimals;
+	private final double scale; // 10^decimals
+
+	private final AtomicLong fastPathCount = new AtomicLong();
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	/**
+	 * Creates an exact evaluator with 3 decimals, no cache and 34-digit division
+	 * (MathContext.DECIMAL128).
+	 */
+	public ExactEvaluator() {
+		this(new ResultFormatter(3), null, MathContext.DECIMAL128);
+	}
+
+	/**
+	 * @param formatter       gives the number of decimals shown
+	 * @param cache           cache consulted before evaluating, or null for none
+	 * @param divisionContext precision and rounding of division on the BigDecimal
+	 *                        path
+	 */
+	public ExactEvaluator(ResultFormatter formatter, ResultCache cache, MathContext divisionContext) {
+		super(formatter, cache);
+		if (divisionContext == null) {
+			throw new IllegalArgumentException("divisionContext must not be null");
+		}
+		this.divisionContext = divisionContext;
+		this.decimals = formatter.getDecimals();
+		this.scale = Math.pow(10, decimals);
+	}
+
+	@Override
+	public boolean isExact() {
+		return true;
+	}
+
+	public MathContext getDivisionContext() {
+		return divisionContext;
+	}
+
+	/**
+	 * @return how many expressions were answered from the double path
+	 */
+	public long getFastPathCount() {
+		return fastPathCount.get();
+	}
+
+	/**
+	 * @return how many expressions had to be evaluated with BigDecimal
+	 */
+	public long getFallbackCount() {
+		return fallbackCount.get();
+	}
+
+	/**
+	 * @return fallbacks / evaluations, or 0 before the first evaluation
+	 */
+	public double getFallbackRate() {
+		long fallbacks = fallbackCount.get();
+		long total = fastPathCount.get() + fallbacks;
+		return total == 0 ? 0 : (double) fallbacks / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ExactEvaluator[fastPath=%d, fallback=%d, divisionContext=%s]", fastPathCount.get(),
+				fallbackCount.get(), divisionContext);
+	}
+
+	/**
+	 * The double pass. Besides each value it keeps an upper bound on its distance
+	 * from the exact value: half an ulp for every parsed number and every rounded
+	 * operation, plus what the inputs' errors add up to through * / + and -.
+	 */
+	@Override
+	protected String compute(CharSequence input) {
+		int length = input.length();
+		double sum = 0; // Sum of the finished additive terms
+		double sumError = 0;
+		boolean hasSum = false;
+		double term = 0; // The term being multiplied / divided
+		double termError = 0;
+		char pendingOp = 0; // Operator before the current number (0 for the first)
+		boolean divideByZero = false;
+		boolean unbounded = false; // Divided by a number that could be zero
+		int numberStart = 0;
+		boolean skipped = false; // Whether the current number holds ignored characters
+		int numbers = 0;
+
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? input.charAt(i) : 0;
+
+			if (i < length) {
+				if (Character.isDigit(c) || c == '.'
+						|| (c == '-' && (i == 0 || CalculatorValidator.isOperator(input.charAt(i - 1))))) {
+					continue;
+				}
+				if (!CalculatorValidator.isOperator(c)) {
+					if (ExpressionTree.isTreeSyntax(input, i)) {
+						return computeTree(input); // Rounded double arithmetic, see the class comment
+					}
+					skipped = true;
+					continue;
+				}
+			} else if (numberStart == length) {
+				break; // Nothing after the last operator
+			}
+
+			double number = parseNumber(input, numberStart, i, skipped);
+			if (DecimalParser.isMalformed(number)) {
+				return CalculatorError.SYNTAX_ERROR.getMessage();
+			}
+			double numberError = 0.5 * Math.ulp(number); // Parsing is correctly rounded
+			numbers++;
+			checkCancelled(numbers);
+
+			switch (pendingOp) {
+			case '*': {
+				double product = term * number;
+				termError = Math.abs(term) * numberError + Math.abs(number) * termError + termError * numberError
+						+ 0.5 * Math.ulp(product);
+				term = product;
+				break;
+			}
+			case '/':
+				if (number == 0) {
+					divideByZero = true; // Reported once the whole input is known to be valid
+				} else {
+					double quotient = term / number;
+					double divisor = Math.abs(number) - numberError;
+					if (divisor <= 0) {
+						unbounded = true;
+					} else {
+						termError = (termError + Math.abs(quotient) * numberError) / divisor
+								+ 0.5 * Math.ulp(quotient);
+					}
+					term = quotient;
+				}
+				break;
+			default:
+				if (numbers > 1) {
+					if (hasSum) {
+						double total = sum + term;
+						sumError += termError + 0.5 * Math.ulp(total);
+						sum = total;
+					} else {
+						sum = term;
+						sumError = termError;
+					}
+					hasSum = true;
+				}
+				term = pendingOp == '-' ? -number : number;
+				termError = numberError;
+				break;
+			}
+
+			pendingOp = c;
+			numberStart = i + 1;
+			skipped = false;
+		}
+
+		if (numbers == 0 || numberStart == length) {
+			return CalculatorError.SYNTAX_ERROR.getMessage(); // Empty, or ends with an operator
+		}
+		if (divideByZero) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+
+		double result = term;
+		double error = termError;
+		if (hasSum) {
+			result = sum + term;
+			error = sumError + termError + 0.5 * Math.ulp(result);
+		}
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+
+		if (!unbounded) {
+			// The bound itself was computed with rounding; a small margin covers that
+			double scaled = result * scale;
+			double scaledError = error * scale * 1.0001 + 2 * Math.ulp(scaled);
+			double low = scaled - scaledError;
+			double high = scaled + scaledError;
+			if (Math.abs(low) < MAX_FAST_SCALED && Math.abs(high) < MAX_FAST_SCALED) {
+				double rounded = Math.floor(low + 0.5);
+				if (rounded == Math.floor(high + 0.5) && rounded != low + 0.5) {
+					fastPathCount.incrementAndGet();
+					return formatScaled((long) rounded);
+				}
+			}
+		}
+
+		fallbackCount.incrementAndGet();
+		return computeExact(input);
+	}
+
+	/**
+	 * The BigDecimal pass, for expressions whose double result is too close to a
+	 * rounding boundary. The input is known to be valid by now.
+	 */
+	private String computeExact(CharSequence input) {
+		int length = input.length();
+		BigDecimal sum = BigDecimal.ZERO;
+		BigDecimal term = null;
+		char pendingOp = 0;
+		int numberStart = 0;
+		boolean skipped = false;
+		int numbers = 0;
+
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? input.charAt(i) : 0;
+
+			if (i < length) {
+				if (Character.isDigit(c) || c == '.'
+						|| (c == '-' && (i == 0 || CalculatorValidator.isOperator(input.charAt(i - 1))))) {
+					continue;
+				}
+				if (!CalculatorValidator.isOperator(c)) {
+					skipped = true;
+					continue;
+				}
+			}
+
+			BigDecimal number = new BigDecimal(numberText(input, numberStart, i, skipped));
+			checkCancelled(++numbers);
+			switch (pendingOp) {
+			case '*':
+				term = term.multiply(number);
+				break;
+			case '/':
+				term = term.divide(number, divisionContext);
+				break;
+			default:
+				if (term != null) {
+					sum = sum.add(term);
+				}
+				term = pendingOp == '-' ? number.negate() : number;
+				break;
+			}
+
+			pendingOp = c;
+			numberStart = i + 1;
+			skipped = false;
+		}
+
+		return sum.add(term).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+	}
+
+	/**
+	 * Writes value / 10^decimals the way BigDecimal.toPlainString would.
+	 */
+	private String formatScaled(long value) {
+		StringBuilder out = new StringBuilder(24);
+		if (value < 0) {
+			out.append('-');
+			value = -value;
+		}
+		String digits = Long.toString(value);
+		int whole = digits.length() - decimals;
+		if (whole <= 0) {
+			out.append('0');
+			if (decimals > 0) {
+				out.append('.');
+			}
+			for (int i = whole; i < 0; i++) {
+				out.append('0');
+			}
+			out.append(digits);
+		} else {
+			out.append(digits, 0, whole);
+			if (decimals > 0) {
+				out.append('.').append(digits, whole, digits.length());
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * The text of the number in input[start, end), without ignored characters.
+	 */
+	private static String numberText(CharSequence input, int start, int end, boolean skipped) {
+		if (!skipped) {
+			return input.subSequence(start, end).toString();
+		}
+		StringBuilder number = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char c = input.charAt(i);
+			if (Character.isDigit(c) || c == '.' || c == '-') {
+				number.append(c);
+			}
+		}
+		return number.toString();
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+
+/**
+ * ExpressionBuffer holds the expression being typed, together with an index of
+ * where its numbers start, so that editing it never has to scan or copy the
+ * whole expression.
+ *
+ * The text is a gap buffer: the characters before the cursor sit at the start
+ * of the array and those after it at the end, with the free space (the gap) in
+ * between. Typing or deleting at the cursor only touches the gap; moving the
+ * cursor moves the characters between its old and new position.
+ *
+ * The index lists the positions of the operators that end a number (+, * and
+ * /; a '-' may be a sign, so it is left to the number). It is a gap buffer of
+ * its own, split at the cursor like the text: the positions before the cursor
+ * are stored as they are, those after it relative to the end of the text (as
+ * position - length, which is negative), so that typing at the cursor does not
+ * change any stored entry. Both halves stay in ascending order.
+ *
+ * Not thread-safe; each calculator session has its own.
+ */
+public class ExpressionBuffer implements CharSequence {
+
+	private char[] text = new char[16];
+	private int gapStart = 0; // The cursor: index of the first character after it
+	private int gapEnd = 16; // Index in text of the first character after the cursor
+
+	private int[] operators = new int[4];
+	private int before = 0; // Operators before the cursor, in operators[0, before)
+	private int after = 0; // Operators after it, in operators[operators.length - after, operators.length)
+
+	@Override
+	public int length() {
+		return text.length - (gapEnd - gapStart);
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+		}
+		return index < gapStart ? text[index] : text[index + gapEnd - gapStart];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || start > end || end > length()) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+		}
+		char[] chars = new char[end - start];
+		int head = Math.max(0, Math.min(end, gapStart) - start); // Characters taken from before the gap
+		System.arraycopy(text, start, chars, 0, head);
+		System.arraycopy(text, start + head + gapEnd - gapStart, chars, head, chars.length - head);
+		return new String(chars);
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length()).toString();
+	}
+
+	/**
+	 * @return the cursor position, between 0 and {@link #length()}
+	 */
+	public int getCursor() {
+		return gapStart;
+	}
+
+	/**
+	 * Moves the cursor. Costs time in proportion to how far it moves.
+	 *
+	 * @param position new cursor position, between 0 and {@link #length()}
+	 */
+	public void setCursor(int position) {
+		if (position < 0 || position > length()) {
+			throw new IndexOutOfBoundsException("cursor " + position + ", length " + length());
+		}
+		int length = length();
+		while (gapStart > position) {
+			char c = text[--gapStart];
+			text[--gapEnd] = c;
+			if (endsNumber(c)) {
+				operators[operators.length - ++after] = gapStart - length; // Now stored from the end
+				before--;
+			}
+		}
+		while (gapStart < position) {
+			char c = text[gapEnd++];
+			text[gapStart++] = c;
+			if (endsNumber(c)) {
+				operators[before++] = gapStart - 1;
+				after--;
+			}
+		}
+	}
+
+	/**
+	 * Inserts text at the cursor and moves the cursor past it.
+	 */
+	public void insert(CharSequence value) {
+		int count = value.length();
+		if (gapEnd - gapStart < count) {
+			grow(count);
+		}
+		for (int i = 0; i < count; i++) {
+			char c = value.charAt(i);
+			if (endsNumber(c)) {
+				if (before + after == operators.length) {
+					growIndex();
+				}
+				operators[before++] = gapStart;
+			}
+			text[gapStart++] = c;
+		}
+	}
+
+	/**
+	 * Moves the cursor to the end and inserts text there.
+	 */
+	public void append(CharSequence value) {
+		setCursor(length());
+		insert(value);
+	}
+
+	/**
+	 * Deletes up to count characters before the cursor.
+	 */
+	public void deleteBeforeCursor(int count) {
+		int stop = Math.max(0, gapStart - count);
+		while (gapStart > stop) {
+			if (endsNumber(text[--gapStart])) {
+				before--;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the last character, if there is one.
+	 */
+	public void deleteLast() {
+		setCursor(length());
+		deleteBeforeCursor(1);
+	}
+
+	/**
+	 * Replaces everything from start to the end of the text, leaving the cursor at
+	 * the end.
+	 */
+	public void replaceTail(int start, CharSequence value) {
+		setCursor(length());
+		deleteBeforeCursor(gapStart - start);
+		insert(value);
+	}
+
+	/**
+	 * Empties the buffer. Keeps the arrays, so typing the next expression
+	 * allocates nothing.
+	 */
+	public void clear() {
+		gapStart = 0;
+		gapEnd = text.length;
+		before = 0;
+		after = 0;
+	}
+
+	/**
+	 * Finds where the last number starts: the index of the last +, * or /, which
+	 * ends the number before it. Constant time.
+	 *
+	 * @return index of the last operator other than '-', or -1 if there is none
+	 */
+	public int lastOperatorIndex() {
+		if (after > 0) {
+			return length() + operators[operators.length - 1];
+		}
+		return before > 0 ? operators[before - 1] : -1;
+	}
+
+	/**
+	 * Finds the last operator other than '-' before a position, by binary search
+	 * in the index.
+	 *
+	 * @param position index in the text, between 0 and {@link #length()}
+	 * @return index of the operator, or -1 if there is none before position
+	 */
+	public int lastOperatorBefore(int position) {
+		if (position <= gapStart) {
+			int found = Arrays.binarySearch(operators, 0, before, position);
+			int i = found >= 0 ? found - 1 : -found - 2; // Last entry < position
+			return i >= 0 ? operators[i] : -1;
+		}
+		int length = length();
+		int from = operators.length - after;
+		int found = Arrays.binarySearch(operators, from, operators.length, position - length);
+		int i = found >= 0 ? found - 1 : -found - 2;
+		if (i >= from) {
+			return length + operators[i];
+		}
+		return before > 0 ? operators[before - 1] : -1;
+	}
+
+	private static boolean endsNumber(char c) {
+		return c != '-' && CalculatorValidator.isOperator(c);
+	}
+
+	/**
+	 * Makes the gap at least count characters long.
+	 */
+	private void grow(int count) {
+		int tail = text.length - gapEnd;
+		int capacity = Math.max(text.length * 2, length() + count + 16);
+		char[] larger = new char[capacity];
+		System.arraycopy(text, 0, larger, 0, gapStart);
+		System.arraycopy(text, gapEnd, larger, capacity - tail, tail);
+		text = larger;
+		gapEnd = capacity - tail;
+	}
+
+	private void growIndex() {
+		int[] larger = new int[operators.length * 2];
+		System.arraycopy(operators, 0, larger, 0, before);
+		System.arraycopy(operators, operators.length - after, larger, larger.length - after, after);
+		operators = larger;
+	}
+}
@@ -0,0 +1,349 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ExpressionCompiler turns an expression with variables (e.g. "a*b-c/d") into a
+ * hidden class whose evaluate method is the expression written out as bytecode:
+ * one load per operand and one dmul / ddiv / dadd per operator, with no loops or
+ * branches. The JIT then compiles it like hand-written code.
+ *
+ * The operands are combined in the same order as applyMulDiv and
+ * applyPrecedence combine them, so the results are bit-identical to the
+ * calculator's. A division by zero leaves an infinite or NaN term, so it shows
+ * up as a result that is not finite, without a branch.
+ *
+ * The hidden classes are defined without the STRONG option, so a class is
+ * unloaded once its function is no longer reachable. Functions obtained through
+ * {@link #get(String)} are kept in a bounded LRU cache; evicting one lets its
+ * class be reclaimed.
+ */
+public class ExpressionCompiler {
+
+	private static final String CLASS_NAME = "CompiledExpression";
+
+	private static final int MAX_CODE_LENGTH = 65535; // Limit of one method's bytecode
+
+	private static final byte ALOAD_0 = 0x2a;
+	private static final byte ALOAD_1 = 0x2b;
+	private static final byte ICONST_0 = 0x03;
+	private static final byte BIPUSH = 0x10;
+	private static final byte SIPUSH = 0x11;
+	private static final byte LDC_W = 0x13;
+	private static final byte LDC2_W = 0x14;
+	private static final byte DALOAD = 0x31;
+	private static final byte DADD = 0x63;
+	private static final byte DMUL = 0x6b;
+	private static final byte DDIV = 0x6f;
+	private static final byte DNEG = 0x77;
+	private static final byte DRETURN = (byte) 0xaf;
+	private static final byte RETURN = (byte) 0xb1;
+	private static final byte INVOKESPECIAL = (byte) 0xb7;
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, ExpressionFunction> cache;
+
+	/**
+	 * @param maxEntries how many compiled expressions {@link #get(String)} keeps
+	 */
+	public ExpressionCompiler(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ExpressionFunction> eldest) {
+				return size() > ExpressionCompiler.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled form of a template, compiling it on first use.
+	 *
+	 * @param template the expression (e.g. "a*b-c/d")
+	 * @throws IllegalArgumentException if the template is not a valid expression
+	 */
+	public ExpressionFunction get(String template) {
+		synchronized (cache) {
+			ExpressionFunction function = cache.get(template);
+			if (function != null) {
+				return function;
+			}
+		}
+
+		// Compiled outside the lock; two threads may both compile a new template
+		ExpressionFunction function = compile(ColumnExpression.compile(template));
+		synchronized (cache) {
+			cache.putIfAbsent(template, function);
+			return cache.get(template);
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Compiles a parsed expression. Expressions too long for one method fall back
+	 * to {@link ColumnExpression#evaluateRow(double[])}.
+	 *
+	 * @param expression the parsed expression
+	 * @return a function of the expression's variables
+	 */
+	public static ExpressionFunction compile(ColumnExpression expression) {
+		byte[] classBytes = generate(expression);
+		if (classBytes == null) {
+			return expression::evaluateRow;
+		}
+		try {
+			Class<?> hidden = MethodHandles.lookup().defineHiddenClass(classBytes, true).lookupClass();
+			return (ExpressionFunction) hidden.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not define compiled expression", e);
+		}
+	}
+
+	/**
+	 * Writes the class file, or returns null if the code does not fit in one
+	 * method.
+	 */
+	private static byte[] generate(ColumnExpression expression) {
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(CLASS_NAME);
+		int superClass = pool.classRef("java/lang/Object");
+		int functionInterface = pool.classRef("ExpressionFunction");
+		int objectInit = pool.methodRef(superClass, "<init>", "()V");
+		int initName = pool.utf8("<init>");
+		int initType = pool.utf8("()V");
+		int evaluateName = pool.utf8("evaluate");
+		int evaluateType = pool.utf8("([D)D");
+		int codeName = pool.utf8("Code");
+
+		ByteArrayOutputStream code = new ByteArrayOutputStream();
+		writeOperand(expression, 0, code, pool);
+		boolean hasSum = false;
+		for (int k = 1; k < expression.steps.length; k++) {
+			switch (expression.steps[k]) {
+			case ColumnExpression.MUL:
+				writeOperand(expression, k, code, pool);
+				code.write(DMUL);
+				break;
+			case ColumnExpression.DIV:
+				writeOperand(expression, k, code, pool);
+				code.write(DDIV);
+				break;
+			default:
+				// The finished term stays on the stack under the next one; from the second
+				// term on it is first added to the sum below it
+				if (hasSum) {
+					code.write(DADD);
+				}
+				hasSum = true;
+				writeOperand(expression, k, code, pool);
+				break;
+			}
+		}
+		if (hasSum) {
+			code.write(DADD);
+		}
+		code.write(DRETURN);
+
+		if (code.size() > MAX_CODE_LENGTH || pool.count() > 0xffff) {
+			return null;
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + code.size());
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xcafebabe);
+			out.writeShort(0); // Minor version
+			out.writeShort(61); // Java 17
+			pool.writeTo(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(functionInterface);
+			out.writeShort(0); // Fields
+
+			out.writeShort(2); // Methods
+			byte[] init = { ALOAD_0, INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, RETURN };
+			writeMethod(out, initName, initType, codeName, 1, 1, init);
+			// Stack: sum, term, operand (2 slots each); array and index take the
+			// operand's place while it is loaded
+			writeMethod(out, evaluateName, evaluateType, codeName, 6, 2, code.toByteArray());
+
+			out.writeShort(0); // Attributes
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Pushes operand k: vars[slot], maybe negated, or a constant.
+	 */
+	private static void writeOperand(ColumnExpression expression, int k, ByteArrayOutputStream code,
+			ConstantPool pool) {
+		int slot = expression.slots[k];
+		if (slot < 0) {
+			writeIndex(code, LDC2_W, pool.doubleConstant(expression.constants[k]));
+			return;
+		}
+
+		code.write(ALOAD_1);
+		if (slot <= 5) {
+			code.write(ICONST_0 + slot);
+		} else if (slot <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(slot);
+		} else if (slot <= Short.MAX_VALUE) {
+			code.write(SIPUSH);
+			code.write(slot >> 8);
+			code.write(slot);
+		} else {
+			writeIndex(code, LDC_W, pool.intConstant(slot));
+		}
+		code.write(DALOAD);
+		if (expression.negate[k]) {
+			code.write(DNEG);
+		}
+	}
+
+	private static void writeIndex(ByteArrayOutputStream code, byte opcode, int index) {
+		code.write(opcode);
+		code.write(index >> 8);
+		code.write(index);
+	}
+
+	private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack,
+			int maxLocals, byte[] code) throws IOException {
+		out.writeShort(0x0001); // public
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(1); // Attributes: Code
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // Exception table
+		out.writeShort(0); // Attributes
+	}
+
+	/**
+	 * The constant pool of the generated class. Entries are shared, so a constant
+	 * or variable index used twice is stored once.
+	 */
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<Object, Integer> indexes = new HashMap<>();
+		private int next = 1; // Index 0 is unused
+
+		int count() {
+			return next;
+		}
+
+		int utf8(String value) {
+			Integer index = indexes.get(value);
+			if (index != null) {
+				return index;
+			}
+			try {
+				out.writeByte(1);
+				out.writeUTF(value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return add(value, 1);
+		}
+
+		int classRef(String internalName) {
+			return reference("Class:" + internalName, 7, utf8(internalName), -1);
+		}
+
+		int methodRef(int owner, String name, String type) {
+			int nameAndType = reference("NameAndType:" + name + type, 12, utf8(name), utf8(type));
+			return reference("Methodref:" + owner + ":" + nameAndType, 10, owner, nameAndType);
+		}
+
+		int intConstant(int value) {
+			Integer index = indexes.get(value);
+			if (index != null) {
+				return index;
+			}
+			try {
+				out.writeByte(3);
+				out.writeInt(value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return add(value, 1);
+		}
+
+		/**
+		 * Keyed by the raw bits, so 0.0 and -0.0 stay two constants.
+		 */
+		int doubleConstant(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			String key = "Double:" + bits;
+			Integer index = indexes.get(key);
+			if (index != null) {
+				return index;
+			}
+			try {
+				out.writeByte(6);
+				out.writeLong(bits);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return add(key, 2); // Doubles take two entries
+		}
+
+		private int reference(String key, int tag, int first, int second) {
+			Integer index = indexes.get(key);
+			if (index != null) {
+				return index;
+			}
+			try {
+				out.writeByte(tag);
+				out.writeShort(first);
+				if (second >= 0) {
+					out.writeShort(second);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return add(key, 1);
+		}
+
+		private int add(Object key, int size) {
+			int index = next;
+			indexes.put(key, index);
+			next += size;
+			return index;
+		}
+
+		void writeTo(DataOutputStream target) throws IOException {
+			target.writeShort(next);
+			bytes.writeTo(target);
+		}
+	}
+}
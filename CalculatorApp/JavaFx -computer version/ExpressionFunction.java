@@ -0,0 +1,15 @@
+/**
+ * ExpressionFunction is an expression with variables, ready to be evaluated for
+ * one set of variable values at a time. See {@link ExpressionCompiler}.
+ */
+@FunctionalInterface
+public interface ExpressionFunction {
+
+	/**
+	 * @param vars the variable values, in the order the expression's variables
+	 *             first appear (see {@link ColumnExpression#getVariables()})
+	 * @return the result; not finite when the expression divides by zero or
+	 *         overflows, which the calculator shows as a Math Error
+	 */
+	double evaluate(double[] vars);
+}
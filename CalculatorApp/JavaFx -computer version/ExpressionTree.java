@@ -0,0 +1,468 @@
+import java.util.Arrays;
+
+/**
+ * ExpressionTree parses expressions with parentheses, the functions sqrt, abs
+ * and ln, and ^ (power, right-associative, binding tighter than a leading '-',
+ * so -2^2 is -4), on top of + - * / with their usual precedence.
+ *
+ * The parser is a Pratt parser: each operator has a binding power, and
+ * parsing an operand stops at the first operator that binds less tightly than
+ * the one before it. It writes the tree into flat arrays instead of node
+ * objects. A node is an index; ops holds its opcode, constants its value if it
+ * is a number, and children its operands at 2 * node and 2 * node + 1. Nodes are
+ * written after their operands, so evaluating is one pass from the first node
+ * to the last (the root), with every operand already computed, and no
+ * recursion.
+ *
+ * The arrays grow to fit the longest expression seen and are reused by every
+ * later parse, so an instance allocates nothing once it is warm. It is not
+ * thread-safe; {@link Evaluator} keeps one per thread.
+ *
+ * Numbers follow the calculator's rules: characters that are not part of the
+ * syntax are ignored, also inside a number, and an operand has at most one
+ * sign. For expressions the flat evaluator
+ * reads as well, the results are the same to the bit: + - * / are applied in
+ * the same order, and a sign is applied by negation, which is exact.
+ */
+public final class ExpressionTree {
+
+	static final byte CONST = 0;
+	static final byte NEG = 1;
+	static final byte ADD = 2;
+	static final byte SUB = 3;
+	static final byte MUL = 4;
+	static final byte DIV = 5;
+	static final byte POW = 6;
+	static final byte SQRT = 7;
+	static final byte ABS = 8;
+	static final byte LN = 9;
+
+	private static final String[] FUNCTION_NAMES = { "sqrt", "abs", "ln" };
+	private static final byte[] FUNCTION_OPS = { SQRT, ABS, LN };
+	static final int MAX_FUNCTION_NAME = 4; // Length of the longest name
+
+	// Binding powers: an infix operator takes its right operand with rbp, and
+	// stops an operand being parsed with a higher minimum
+	private static final int ADD_BP = 10;
+	private static final int MUL_BP = 20;
+	private static final int NEG_BP = 30; // -2*3 is (-2)*3, -2^2 is -(2^2)
+	private static final int POW_BP = 40;
+
+	private static final int MAX_DEPTH = 500; // Nesting of parentheses, functions and signs; a ^ chain is one level
+
+	// Tokens
+	private static final int END = 0;
+	private static final int NUMBER = 1;
+	private static final int OPERATOR = 2; // + - * / ^
+	private static final int OPEN = 3;
+	private static final int CLOSE = 4;
+	private static final int FUNCTION = 5;
+	private static final int BAD = 6;
+
+	byte[] ops = new byte[16];
+	double[] constants = new double[16];
+	int[] children = new int[32];
+	private double[] values = new double[16]; // Value of each node during evaluate()
+	private int size = 0;
+
+	// Parse state
+	private CharSequence input;
+	private int position; // Index after the current token
+	private int token;
+	private char tokenChar; // The operator, for OPERATOR
+	private double tokenValue; // The number, for NUMBER
+	private byte tokenFunction; // The opcode, for FUNCTION
+	private int depth;
+	private int numbers;
+	private int[] powers = new int[16]; // Operands of the ^ chains being parsed, innermost chain last
+	private int powersSize;
+
+	/**
+	 * Checks whether the character at index i is syntax that only the tree reads:
+	 * a parenthesis, ^ or the start of a function name.
+	 *
+	 * @param input the expression
+	 * @param i     index of a character that is neither a digit, '.' nor + - * /
+	 */
+	public static boolean isTreeSyntax(CharSequence input, int i) {
+		char c = input.charAt(i);
+		return c == '(' || c == ')' || c == '^' || functionAt(input, i) >= 0;
+	}
+
+	/**
+	 * @return the length of the function name that starts at index i, or 0 if
+	 *         none does
+	 */
+	static int functionNameLength(CharSequence input, int i) {
+		int function = functionAt(input, i);
+		return function < 0 ? 0 : FUNCTION_NAMES[function].length();
+	}
+
+	/**
+	 * Checks whether text ends with a function name, for readers that see an
+	 * expression one character at a time.
+	 */
+	static boolean endsWithFunction(CharSequence text) {
+		for (int f = 0; f < FUNCTION_NAMES.length; f++) {
+			int start = text.length() - FUNCTION_NAMES[f].length();
+			if (start >= 0 && functionAt(text, start) == f) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses an expression into this tree, replacing what it held.
+	 *
+	 * @param expression the expression (e.g. "2*(3+sqrt(16))^2")
+	 * @return false if it is not a valid expression; the tree is then empty
+	 * @throws java.util.concurrent.CancellationException if the thread is
+	 *                                                    interrupted while a long
+	 *                                                    expression is parsed
+	 */
+	public boolean parse(CharSequence expression) {
+		input = expression;
+		position = 0;
+		depth = 0;
+		numbers = 0;
+		size = 0;
+		powersSize = 0;
+		next();
+		boolean valid = parseExpression(0) >= 0 && token == END;
+		input = null;
+		if (!valid) {
+			size = 0;
+		}
+		return valid;
+	}
+
+	/**
+	 * @return number of nodes; the root is the last one
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Evaluates the parsed expression.
+	 *
+	 * @return its value; NaN if it divides by zero, even in a part whose value
+	 *         does not reach the result, as with the flat evaluator
+	 */
+	public double evaluate() {
+		if (size == 0) {
+			return Double.NaN;
+		}
+		byte[] ops = this.ops;
+		int[] children = this.children;
+		double[] v = values;
+		boolean divideByZero = false;
+
+		for (int node = 0; node < size; node++) {
+			int left = children[2 * node];
+			int right = children[2 * node + 1];
+			switch (ops[node]) {
+			case CONST:
+				v[node] = constants[node];
+				break;
+			case NEG:
+				v[node] = -v[left];
+				break;
+			case ADD:
+				v[node] = v[left] + v[right];
+				break;
+			case SUB:
+				v[node] = v[left] - v[right];
+				break;
+			case MUL:
+				v[node] = v[left] * v[right];
+				break;
+			case DIV:
+				if (v[right] == 0) {
+					divideByZero = true;
+				}
+				v[node] = v[left] / v[right];
+				break;
+			case POW:
+				v[node] = Math.pow(v[left], v[right]);
+				break;
+			case SQRT:
+				v[node] = Math.sqrt(v[left]);
+				break;
+			case ABS:
+				v[node] = Math.abs(v[left]);
+				break;
+			default:
+				v[node] = Math.log(v[left]);
+				break;
+			}
+		}
+		return divideByZero ? Double.NaN : v[size - 1];
+	}
+
+	/**
+	 * Parses an operand and every operator after it that binds at least as
+	 * tightly as minPower.
+	 *
+	 * @return the node of the operand, or -1 on a syntax error
+	 */
+	private int parseExpression(int minPower) {
+		if (++depth > MAX_DEPTH) {
+			return -1;
+		}
+		int left = parsePrefix();
+
+		while (left >= 0 && token == OPERATOR) {
+			char op = tokenChar;
+			int leftPower;
+			int rightPower;
+			byte opcode;
+			switch (op) {
+			case '+':
+				leftPower = ADD_BP;
+				rightPower = ADD_BP + 1;
+				opcode = ADD;
+				break;
+			case '-':
+				leftPower = ADD_BP;
+				rightPower = ADD_BP + 1;
+				opcode = SUB;
+				break;
+			case '*':
+				leftPower = MUL_BP;
+				rightPower = MUL_BP + 1;
+				opcode = MUL;
+				break;
+			case '/':
+				leftPower = MUL_BP;
+				rightPower = MUL_BP + 1;
+				opcode = DIV;
+				break;
+			default:
+				leftPower = POW_BP;
+				rightPower = POW_BP + 1; // Each operand of the chain, which parsePowers reads
+				opcode = POW;
+				break;
+			}
+			if (leftPower < minPower) {
+				break;
+			}
+			if (opcode == POW) {
+				left = parsePowers(left);
+				continue;
+			}
+			next();
+			int right = parseExpression(rightPower);
+			left = right < 0 ? -1 : emit(opcode, left, right, 0);
+		}
+
+		depth--;
+		return left;
+	}
+
+	/**
+	 * Parses a chain of ^ after its first operand, starting at the first ^. The
+	 * operands are collected in a loop and the chain is built from the right
+	 * (2^3^2 is 2^(3^2)), so a long chain takes one level of nesting, not one per
+	 * ^.
+	 *
+	 * @return the node of the chain, or -1 on a syntax error
+	 */
+	private int parsePowers(int first) {
+		int base = powersSize;
+		pushPower(first);
+		while (token == OPERATOR && tokenChar == '^') {
+			next();
+			int operand = parseExpression(POW_BP + 1); // Stops at the next ^
+			if (operand < 0) {
+				powersSize = base;
+				return -1;
+			}
+			pushPower(operand);
+		}
+		int right = powers[--powersSize];
+		while (powersSize > base) {
+			right = emit(POW, powers[--powersSize], right, 0);
+		}
+		return right;
+	}
+
+	private void pushPower(int node) {
+		if (powersSize == powers.length) {
+			powers = Arrays.copyOf(powers, powersSize * 2);
+		}
+		powers[powersSize++] = node;
+	}
+
+	/**
+	 * Parses what can start an operand: a number, a sign, a parenthesized
+	 * expression or a function.
+	 *
+	 * @return the node, or -1 on a syntax error
+	 */
+	private int parsePrefix() {
+		switch (token) {
+		case NUMBER: {
+			double value = tokenValue;
+			next();
+			return emit(CONST, -1, -1, value);
+		}
+		case OPERATOR: {
+			if (tokenChar != '-') {
+				return -1;
+			}
+			next();
+			if (token == OPERATOR && tokenChar == '-') {
+				return -1; // One sign per operand, as in the flat evaluator: --2 is not 2
+			}
+			int operand = parseExpression(NEG_BP);
+			if (operand < 0) {
+				return -1;
+			}
+			if (operand == size - 1 && ops[operand] == CONST) {
+				constants[operand] = -constants[operand]; // A negative number
+				return operand;
+			}
+			return emit(NEG, operand, -1, 0);
+		}
+		case OPEN:
+			return parseGroup();
+		case FUNCTION: {
+			byte function = tokenFunction;
+			next();
+			if (token != OPEN) {
+				return -1; // Function arguments are always in parentheses
+			}
+			int argument = parseGroup();
+			return argument < 0 ? -1 : emit(function, argument, -1, 0);
+		}
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses "(" expression ")", starting at the "(".
+	 */
+	private int parseGroup() {
+		next();
+		int inner = parseExpression(0);
+		if (inner < 0 || token != CLOSE) {
+			return -1;
+		}
+		next();
+		return inner;
+	}
+
+	/**
+	 * Adds a node after all the others.
+	 *
+	 * @return its index
+	 */
+	private int emit(byte op, int left, int right, double constant) {
+		if (size == ops.length) {
+			int capacity = size * 2;
+			ops = Arrays.copyOf(ops, capacity);
+			constants = Arrays.copyOf(constants, capacity);
+			children = Arrays.copyOf(children, 2 * capacity);
+			values = new double[capacity];
+		}
+		ops[size] = op;
+		constants[size] = constant;
+		children[2 * size] = left;
+		children[2 * size + 1] = right;
+		return size++;
+	}
+
+	/**
+	 * Reads the next token, skipping ignored characters.
+	 */
+	private void next() {
+		int length = input.length();
+		while (position < length) {
+			char c = input.charAt(position);
+			if (Character.isDigit(c) || c == '.') {
+				readNumber();
+				return;
+			}
+			switch (c) {
+			case '+':
+			case '-':
+			case '*':
+			case '/':
+			case '^':
+				token = OPERATOR;
+				tokenChar = c;
+				position++;
+				return;
+			case '(':
+				token = OPEN;
+				position++;
+				return;
+			case ')':
+				token = CLOSE;
+				position++;
+				return;
+			default:
+				int function = functionAt(input, position);
+				if (function >= 0) {
+					token = FUNCTION;
+					tokenFunction = FUNCTION_OPS[function];
+					position += FUNCTION_NAMES[function].length();
+					return;
+				}
+				position++; // Ignored
+				break;
+			}
+		}
+		token = END;
+	}
+
+	/**
+	 * Reads a number starting at position. Like the flat evaluator, it goes on
+	 * over ignored characters and leaves them out.
+	 */
+	private void readNumber() {
+		int length = input.length();
+		int start = position;
+		boolean skipped = false;
+		while (position < length) {
+			char c = input.charAt(position);
+			if (Character.isDigit(c) || c == '.') {
+				position++;
+			} else if (c == '+' || c == '-' || c == '*' || c == '/' || c == '^' || c == '(' || c == ')'
+					|| functionAt(input, position) >= 0) {
+				break;
+			} else {
+				skipped = true;
+				position++;
+			}
+		}
+
+		tokenValue = Evaluator.parseNumber(input, start, position, skipped);
+		token = DecimalParser.isMalformed(tokenValue) ? BAD : NUMBER;
+		numbers++;
+		Evaluator.checkCancelled(numbers);
+	}
+
+	/**
+	 * @return the index in FUNCTION_NAMES of the function whose name starts at
+	 *         index i, or -1
+	 */
+	private static int functionAt(CharSequence input, int i) {
+		for (int f = 0; f < FUNCTION_NAMES.length; f++) {
+			String name = FUNCTION_NAMES[f];
+			if (i + name.length() <= input.length()) {
+				int k = 0;
+				while (k < name.length() && input.charAt(i + k) == name.charAt(k)) {
+					k++;
+				}
+				if (k == name.length()) {
+					return f;
+				}
+			}
+		}
+		return -1;
+	}
+}
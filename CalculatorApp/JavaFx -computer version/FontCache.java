@@ -0,0 +1,83 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * FontCache hands out the calculator's font in sizes rounded down to half a
+ * point, creating each size only once, and measures text in that font.
+ *
+ * Glyph widths are measured once at a reference size and scaled, since a
+ * font's advance widths grow in proportion to its size. Measuring a whole
+ * display string is then a sum over its characters, with no layout work.
+ *
+ * Must be used on the JavaFX application thread only.
+ */
+public class FontCache {
+
+	private static final String FAMILY = "Lucida Console";
+	private static final double STEP = 0.5; // Sizes are rounded down to a multiple of this
+	private static final double REFERENCE_SIZE = 100; // Size the glyph widths are measured at
+
+	private final Map<Integer, Font> fonts = new HashMap<>(); // Key: size / STEP
+	private final double[] asciiWidths = new double[128]; // Width at REFERENCE_SIZE, 0 until measured
+	private final Map<Character, Double> otherWidths = new HashMap<>();
+	private final Text probe = new Text(); // Measures one glyph at a time
+
+	public FontCache() {
+		probe.setFont(new Font(FAMILY, REFERENCE_SIZE));
+	}
+
+	/**
+	 * @param size wanted size in points; rounded down to a multiple of 0.5
+	 * @return the font in that size, the same instance every time
+	 */
+	public Font get(double size) {
+		int key = (int) Math.floor(size / STEP);
+		Font font = fonts.get(key);
+		if (font == null) {
+			font = new Font(FAMILY, key * STEP);
+			fonts.put(key, font);
+		}
+		return font;
+	}
+
+	/**
+	 * Finds the largest size at which text is at most the given width.
+	 *
+	 * @return that size, not rounded; infinite for empty text
+	 */
+	public double sizeToFit(CharSequence text, double width) {
+		double referenceWidth = 0;
+		for (int i = 0; i < text.length(); i++) {
+			referenceWidth += glyphWidth(text.charAt(i));
+		}
+		return referenceWidth == 0 ? Double.POSITIVE_INFINITY : width * REFERENCE_SIZE / referenceWidth;
+	}
+
+	/**
+	 * The advance width of one character at REFERENCE_SIZE.
+	 */
+	private double glyphWidth(char c) {
+		if (c < asciiWidths.length) {
+			double width = asciiWidths[c];
+			if (width == 0) {
+				width = measure(c);
+				asciiWidths[c] = width;
+			}
+			return width;
+		}
+		Double width = otherWidths.get(c);
+		if (width == null) {
+			width = measure(c);
+			otherWidths.put(c, width);
+		}
+		return width;
+	}
+
+	private double measure(char c) {
+		probe.setText(String.valueOf(c));
+		return probe.getLayoutBounds().getWidth();
+	}
+}
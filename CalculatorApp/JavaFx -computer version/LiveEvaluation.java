@@ -0,0 +1,274 @@
+import java.util.Arrays;
+
+/**
+ * LiveEvaluation keeps a running evaluation of an expression while it is being
+ * typed, so that the result is known after every keystroke instead of only
+ * after "=".
+ *
+ * The state is the sum of the finished additive terms plus the pending
+ * multiplicative term. Every time an operator is typed, the number before it is
+ * folded into that state, and the previous state is pushed on a small stack so
+ * that DEL (or replacing the last number) can roll it back without re-reading
+ * the expression. Only the number currently being typed is parsed when the
+ * result is asked for.
+ *
+ * The fold gives exactly the same value as applyPrecedence: subtraction is
+ * carried as a negated term, which IEEE arithmetic treats identically. Input it
+ * cannot follow (syntax errors, unknown characters) is reported as UNKNOWN, and
+ * the caller falls back to the full parser, which decides the exact error.
+ */
+public class LiveEvaluation {
+
+	/** The expression so far is valid and {@link #value()} holds its result. */
+	public static final int OK = 0;
+	/** The expression is valid but divides by zero or overflows. */
+	public static final int MATH_ERROR = 1;
+	/** The expression is incomplete or not understood; use the full parser. */
+	public static final int UNKNOWN = 2;
+
+	private double sum = 0; // Sum of the finished additive terms
+	private boolean hasSum = false; // False until the first term is finished
+	private double term = 0; // The term being multiplied / divided
+	private boolean hasTerm = false; // False until the first number is folded
+	private char pendingOp = 0; // Operator before the number being typed (0 for the first number)
+	private boolean divideByZero = false;
+	private int numberStart = 0; // Index where the number being typed starts
+	private int length = 0; // How many characters of the expression were read
+	private int errorAt = -1; // Index of the first character that could not be followed, or -1
+	private double value = 0; // Last value computed by compute()
+
+	// One entry per folded operator: where it is and the state before it.
+	// Allocated on first use, so an idle session costs almost nothing.
+	private int depth = 0;
+	private int[] savedIndex = new int[0];
+	private double[] savedSum = new double[0];
+	private double[] savedTerm = new double[0];
+	private char[] savedOp = new char[0];
+	private byte[] savedFlags = new byte[0];
+
+	private static final byte HAS_SUM = 1;
+	private static final byte HAS_TERM = 2;
+	private static final byte DIVIDE_BY_ZERO = 4;
+
+	/**
+	 * Forgets the whole expression.
+	 */
+	public void reset() {
+		sum = 0;
+		hasSum = false;
+		term = 0;
+		hasTerm = false;
+		pendingOp = 0;
+		divideByZero = false;
+		numberStart = 0;
+		length = 0;
+		errorAt = -1;
+		depth = 0;
+	}
+
+	/**
+	 * Reads the characters that were appended to the expression.
+	 *
+	 * @param input the whole expression; characters before {@link #length()} must
+	 *              not have changed since they were read
+	 */
+	public void append(CharSequence input) {
+		int end = input.length();
+		for (int i = length; i < end; i++) {
+			if (errorAt < 0) {
+				read(input, i);
+			}
+		}
+		length = end;
+	}
+
+	/**
+	 * Rolls the state back after the expression was cut to a shorter length (DEL,
+	 * or before replacing the last number).
+	 *
+	 * @param newLength the new length of the expression
+	 */
+	public void truncate(int newLength) {
+		if (newLength >= length) {
+			return;
+		}
+
+		while (depth > 0 && savedIndex[depth - 1] >= newLength) {
+			depth--;
+			sum = savedSum[depth];
+			term = savedTerm[depth];
+			pendingOp = savedOp[depth];
+			hasSum = (savedFlags[depth] & HAS_SUM) != 0;
+			hasTerm = (savedFlags[depth] & HAS_TERM) != 0;
+			divideByZero = (savedFlags[depth] & DIVIDE_BY_ZERO) != 0;
+		}
+		if (depth == 0) {
+			numberStart = 0;
+		} else {
+			numberStart = savedIndex[depth - 1] + 1;
+		}
+
+		if (errorAt >= newLength) {
+			errorAt = -1;
+		}
+		length = newLength;
+	}
+
+	/**
+	 * @return number of characters read so far
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return how many numbers and operators were read, up to the first character
+	 *         that could not be followed
+	 */
+	public int tokenCount() {
+		int end = errorAt >= 0 ? errorAt : length;
+		return 2 * depth + (end > numberStart ? 1 : 0);
+	}
+
+	/**
+	 * Computes the result of the expression read so far. Only the number being
+	 * typed is parsed; everything before it is already folded.
+	 *
+	 * @param input the expression that was read
+	 * @return OK, MATH_ERROR or UNKNOWN
+	 */
+	public int compute(CharSequence input) {
+		if (errorAt >= 0 || length == 0) {
+			return UNKNOWN;
+		}
+
+		double number = DecimalParser.parse(input, numberStart, length);
+		if (DecimalParser.isMalformed(number)) {
+			return UNKNOWN;
+		}
+
+		double s = sum;
+		boolean sSet = hasSum;
+		double t = term;
+		boolean zeroDivisor = divideByZero;
+
+		switch (pendingOp) {
+		case '*':
+			t *= number;
+			break;
+		case '/':
+			if (number == 0) {
+				zeroDivisor = true;
+			} else {
+				t /= number;
+			}
+			break;
+		default:
+			if (hasTerm) {
+				s = sSet ? s + t : t;
+				sSet = true;
+			}
+			t = pendingOp == '-' ? -number : number;
+			break;
+		}
+
+		if (zeroDivisor) {
+			return MATH_ERROR;
+		}
+
+		double result = sSet ? s + t : t;
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return MATH_ERROR;
+		}
+
+		value = result;
+		return OK;
+	}
+
+	/**
+	 * @return the value found by the last {@link #compute(CharSequence)} that
+	 *         returned OK
+	 */
+	public double value() {
+		return value;
+	}
+
+	/**
+	 * Reads one character. Follows the rules of Evaluator.compute: a '-' at the
+	 * start or right after an operator belongs to the number.
+	 */
+	private void read(CharSequence input, int i) {
+		char c = input.charAt(i);
+
+		if (Character.isDigit(c) || c == '.') {
+			return;
+		}
+		if (c == '-' && (i == 0 || CalculatorValidator.isOperator(input.charAt(i - 1)))) {
+			return;
+		}
+		if (!CalculatorValidator.isOperator(c)) {
+			errorAt = i; // Unknown character
+			return;
+		}
+
+		double number = DecimalParser.parse(input, numberStart, i);
+		if (DecimalParser.isMalformed(number)) {
+			errorAt = i;
+			return;
+		}
+
+		push(i);
+		fold(number);
+		pendingOp = c;
+		numberStart = i + 1;
+	}
+
+	/**
+	 * Folds a finished number into the running state, using the operator that
+	 * came before it.
+	 */
+	private void fold(double number) {
+		switch (pendingOp) {
+		case '*':
+			term *= number;
+			break;
+		case '/':
+			if (number == 0) {
+				divideByZero = true;
+			} else {
+				term /= number;
+			}
+			break;
+		default:
+			if (hasTerm) {
+				sum = hasSum ? sum + term : term;
+				hasSum = true;
+			}
+			term = pendingOp == '-' ? -number : number;
+			hasTerm = true;
+			break;
+		}
+	}
+
+	/**
+	 * Saves the state before the operator at the given index is folded.
+	 */
+	private void push(int operatorIndex) {
+		if (depth == savedIndex.length) {
+			int capacity = Math.max(8, depth * 2);
+			savedIndex = Arrays.copyOf(savedIndex, capacity);
+			savedSum = Arrays.copyOf(savedSum, capacity);
+			savedTerm = Arrays.copyOf(savedTerm, capacity);
+			savedOp = Arrays.copyOf(savedOp, capacity);
+			savedFlags = Arrays.copyOf(savedFlags, capacity);
+		}
+
+		savedIndex[depth] = operatorIndex;
+		savedSum[depth] = sum;
+		savedTerm[depth] = term;
+		savedOp[depth] = pendingOp;
+		savedFlags[depth] = (byte) ((hasSum ? HAS_SUM : 0) | (hasTerm ? HAS_TERM : 0)
+				| (divideByZero ? DIVIDE_BY_ZERO : 0));
+		depth++;
+	}
+}
@@ -1,25 +1,63 @@
+import java.util.List;
+
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+/**
+ * Options: --fast-startup builds the view in code instead of loading the FXML
+ * and warms the engine on a background thread while the window opens;
+ * --startup-timeline (or -Dcalculator.startupTimeline=true) prints how long
+ * each startup step took once the first button is pressed.
+ */
 public class MyProject extends Application {
 
 	public void start(Stage stage) throws Exception {
-		Parent root = (Parent) FXMLLoader.load(getClass().getResource("MyProject.fxml"));
+		StartupTimeline.mark(StartupTimeline.FX_START);
+		List<String> options = getParameters().getRaw();
+
+		Parent root;
+		if (options.contains("--fast-startup")) {
+			EngineWarmup.start();
+			root = CalculatorView.build(new MyProjectController());
+		} else {
+			root = (Parent) FXMLLoader.load(getClass().getResource("MyProject.fxml"));
+		}
 		Scene scene = new Scene(root);
+		StartupTimeline.mark(StartupTimeline.SCENE_BUILT);
+		if (StartupTimeline.isEnabled()) {
+			scene.addPostLayoutPulseListener(new Runnable() {
+				@Override
+				public void run() {
+					StartupTimeline.mark(StartupTimeline.FIRST_FRAME); // Only the first pulse is recorded
+				}
+			});
+		}
+
 		stage.setTitle("The Calculator");
 		stage.setScene(scene);
 		stage.setWidth(330);
 		stage.setHeight(440);
 		stage.show();
+		StartupTimeline.mark(StartupTimeline.STAGE_SHOWN);
 
 		stage.setMinWidth(300);
 		stage.setMinHeight(300);
 	}
 
 	public static void main(String[] args) {
+		if (Boolean.getBoolean("calculator.startupTimeline") || List.of(args).contains("--startup-timeline")) {
+			StartupTimeline.enable();
+		}
+		StartupTimeline.mark(StartupTimeline.MAIN);
+		if (CalculatorMetrics.ENABLED) {
+			CalculatorMetricsJmx.register();
+		}
+		if (!"false".equals(System.getProperty("calculator.jfr"))) {
+			CalculatorJfr.install();
+		}
 		launch(args);
 		System.out.println();
 	}
@@ -1,4 +1,6 @@
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -6,11 +8,14 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.RowConstraints;
 import javafx.scene.text.Font;
+import javafx.util.Duration;
 
 public class MyProjectController {
 
@@ -27,7 +32,14 @@ public class MyProjectController {
 	private TextField textField;
 
 	private Button[] buttons;
-	private CalculatorLogic logic = new CalculatorLogic();
+	private AsyncCalculator calculator = new AsyncCalculator(new CalculatorLogic(), new DisplayEditor(),
+			Platform::runLater); // Evaluates off the FX thread
+	private final PauseTransition computingDelay = new PauseTransition(Duration.millis(150)); // Before "computing…" is shown
+	private int computingShown = 0; // Length of the "computing…" note at the end of the display, 0 if none
+
+	private final FontCache fonts = new FontCache();
+	private boolean buttonFontsDirty = false; // Window width changed since the last pulse
+	private boolean displayFontDirty = false; // Window width or display text changed since the last pulse
 
 	/**
 	 * Initializes the calculator UI.
@@ -40,6 +52,20 @@ public class MyProjectController {
 		addButtons();
 		setupResponsiveFontSizing();
 		setupTextLengthListener();
+		setupComputingIndicator();
+	}
+
+	/**
+	 * Initializes the calculator UI for a view built in code (see
+	 * {@link CalculatorView}) rather than loaded from FXML.
+	 *
+	 * @param textField  the display
+	 * @param buttonGrid the grid to fill with buttons
+	 */
+	void initialize(TextField textField, GridPane buttonGrid) {
+		this.textField = textField;
+		this.buttonGrid = buttonGrid;
+		initialize();
 	}
 
 	/**
@@ -139,7 +165,9 @@ public class MyProjectController {
 	}
 
 	/**
-	 * Sets up dynamic resizing of font size based on scene width.
+	 * Sets up dynamic resizing of font size based on scene width. A drag fires
+	 * many width changes per frame, so they only mark the fonts as out of date;
+	 * the fonts are updated once, just before the next pulse lays out the scene.
 	 */
 	private void setupResponsiveFontSizing() {
 		textField.sceneProperty().addListener(new javafx.beans.value.ChangeListener<javafx.scene.Scene>() {
@@ -151,9 +179,15 @@ public class MyProjectController {
 						@Override
 						public void changed(javafx.beans.value.ObservableValue<? extends Number> o, Number oldVal,
 								Number newVal) {
-							double width = newVal.doubleValue();
-							updateTextFieldFontSize(width);
-							updateButtonFonts(width);
+							buttonFontsDirty = true;
+							displayFontDirty = true;
+							Platform.requestNextPulse();
+						}
+					});
+					newScene.addPreLayoutPulseListener(new Runnable() {
+						@Override
+						public void run() {
+							applyPendingFonts(newScene.getWidth());
 						}
 					});
 				}
@@ -162,24 +196,128 @@ public class MyProjectController {
 	}
 
 	/**
-	 * Handles any button click — adds the text to the display.
+	 * Brings the fonts up to date with everything that changed since the last
+	 * pulse. Runs once per pulse, before CSS and layout, so the new fonts are laid
+	 * out in the same pulse.
+	 *
+	 * @param width the current window width
+	 */
+	private void applyPendingFonts(double width) {
+		if (buttonFontsDirty) {
+			buttonFontsDirty = false;
+			updateButtonFonts(width);
+		}
+		if (displayFontDirty) {
+			displayFontDirty = false;
+			updateTextFieldFontSize(width);
+		}
+	}
+
+	/**
+	 * Handles any button click — passes it to the calculator, which edits the
+	 * display once the worker thread has applied it.
 	 *
 	 * @param text the text of the clicked button
 	 */
 	private void onButtonPressed(String text) {
-		String result = logic.userInput(text);
-		textField.setText(result);
+		StartupTimeline.mark(StartupTimeline.FIRST_KEYSTROKE);
+		calculator.submit(text);
+		computingDelay.playFromStart();
+	}
+
+	/**
+	 * Applies the calculator's display edits to the text field in place, so a
+	 * keystroke costs the characters it changes rather than a copy of the whole
+	 * display.
+	 */
+	private class DisplayEditor implements DisplayListener {
+		@Override
+		public void onAppend(CharSequence text) {
+			hideComputing();
+			textField.appendText(text.toString());
+			moveCaretToEnd();
+		}
+
+		@Override
+		public void onDeleteTail(int count) {
+			hideComputing();
+			int length = textField.getLength();
+			textField.deleteText(length - count, length);
+			moveCaretToEnd();
+		}
+
+		@Override
+		public void onReplace(int start, int end, CharSequence text) {
+			hideComputing();
+			textField.replaceText(start, end, text.toString());
+			moveCaretToEnd();
+		}
+
+		@Override
+		public void onResult(String result, boolean error) {
+			hideComputing();
+			if (error) {
+				textField.setText(result);
+			} else {
+				textField.appendText(" = " + result);
+			}
+			moveCaretToEnd();
+		}
+	}
+
+	private void moveCaretToEnd() {
 		textField.requestFocus(); // Set focus on the text field so the user can immediately start typing
-		textField.positionCaret(textField.getText().length()); // Move the caret (cursor) to the end of the current text
-																// for better UX
+		textField.positionCaret(textField.getLength()); // Move the caret (cursor) to the end of the current text
+														// for better UX
+	}
+
+	/**
+	 * Shows "computing…" after the display if the latest keystroke is still being
+	 * evaluated when computingDelay runs out, so quick keystrokes never flicker.
+	 * The next edit removes it again. Escape gives up on the evaluation.
+	 */
+	private void setupComputingIndicator() {
+		computingDelay.setOnFinished(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				if (calculator.isComputing() && computingShown == 0) {
+					String note = "  computing\u2026 (Esc to cancel)";
+					textField.appendText(note);
+					computingShown = note.length();
+				}
+			}
+		});
+		textField.addEventHandler(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
+			@Override
+			public void handle(KeyEvent event) {
+				if (event.getCode() == KeyCode.ESCAPE && calculator.isComputing()) {
+					calculator.cancel();
+					computingDelay.stop();
+					hideComputing();
+					event.consume();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Removes the "computing…" note, so the display is what the calculator last
+	 * sent again.
+	 */
+	private void hideComputing() {
+		if (computingShown > 0) {
+			int length = textField.getLength();
+			textField.deleteText(length - computingShown, length);
+			computingShown = 0;
+		}
 	}
 
 	/**
 	 * Dynamically adjusts the font size of the calculator display based on: 1. The
-	 * current window width (to scale the UI responsively). 2. The length of the
+	 * current window width (to scale the UI responsively). 2. The width of the
 	 * text in the display (to avoid text being cut off).
 	 *
-	 * Font size will shrink gradually if the text length exceeds 20 characters.
+	 * Font size will shrink to the largest size at which the measured text fits.
 	 *
 	 * @param width the current window width
 	 */
@@ -194,14 +332,17 @@ public class MyProjectController {
 		// Scale font size based on window width
 		double newFontSize = Math.max(18, Math.min(maxFontSize, baseFontSize));
 
-		// Reduce font size if the text is too long
-		int textLength = textField.getText().length();
-		if (textLength > 15) {
-			double shrink = (textLength - 15) * 0.6;
-			newFontSize = Math.max(minFontSize, newFontSize - shrink);
+		// Reduce font size if the text is too wide
+		double available = textField.getWidth() - textField.getPadding().getLeft() - textField.getPadding().getRight();
+		if (available <= 0) {
+			available = width - 30; // Not laid out yet: window width less the margins
+		}
+		double fitFontSize = fonts.sizeToFit(textField.getText(), available);
+		if (fitFontSize < newFontSize) {
+			newFontSize = Math.max(minFontSize, fitFontSize);
 		}
 
-		textField.setFont(new Font("Lucida Console", newFontSize));
+		textField.setFont(fonts.get(newFontSize));
 	}
 
 	/**
@@ -214,23 +355,25 @@ public class MyProjectController {
 		double scaleFactor = width / baseWidth;
 		double newFontSize = Math.max(18, Math.min(64, 18 * scaleFactor));
 
+		Font font = fonts.get(newFontSize);
 		for (Button btn : buttons) {
-			btn.setFont(new Font("Lucida Console", newFontSize));
+			btn.setFont(font); // The same instance as before if the rounded size did not change
 		}
 	}
 
 	/**
 	 * Sets up a listener on the text field's text property, so the font size
 	 * adjusts dynamically not only by window width but also when the length of the
-	 * input text changes.
+	 * input text changes. Like a width change, it is applied on the next pulse.
 	 */
 	private void setupTextLengthListener() {
-		textField.textProperty().addListener(new javafx.beans.value.ChangeListener<String>() {
+		// An InvalidationListener, so an edit does not build the old and new text just for the listener
+		textField.textProperty().addListener(new javafx.beans.InvalidationListener() {
 			@Override
-			public void changed(javafx.beans.value.ObservableValue<? extends String> obs, String oldText,
-					String newText) {
+			public void invalidated(javafx.beans.Observable obs) {
 				if (textField.getScene() != null) {
-					updateTextFieldFontSize(textField.getScene().getWidth());
+					displayFontDirty = true;
+					Platform.requestNextPulse();
 				} else {
 					updateTextFieldFontSize(330.0); // fallback width
 				}
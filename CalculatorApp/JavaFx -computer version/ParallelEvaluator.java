@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelEvaluator evaluates one very long expression (e.g. millions of terms
+ * written by an exporter) on several cores.
+ *
+ * The input is cut into chunks of about chunkChars characters, each ending just
+ * before a top-level + or -. Every chunk is tokenized and folded by its own
+ * ForkJoin task with the same rules as {@link Evaluator}, and its terms are
+ * added with compensated (Neumaier) summation. The chunk sums are then combined
+ * pairwise, again keeping the rounding error of each addition.
+ *
+ * The chunks depend only on the input and chunkChars, and the pairwise tree
+ * only on the number of chunks, so the result is the same for any pool size.
+ * Because the rounding errors are kept, the sum is at least as accurate as the
+ * plain left-to-right sum, though it can differ from it in the last bits (and
+ * a sum whose intermediate value would overflow can stay finite).
+ *
+ * An expression with parentheses, ^ or functions cannot be cut at its + and -,
+ * so as soon as a chunk reaches the first of them, the whole expression is
+ * handed to {@link Evaluator}'s {@link ExpressionTree}, as Evaluator does.
+ *
+ * Usage: java ParallelEvaluator &lt;file&gt; [threads] [chunkChars]
+ */
+public class ParallelEvaluator {
+
+	private static final int DEFAULT_CHUNK_CHARS = 64 * 1024;
+	private static final int NONE = Integer.MAX_VALUE; // No syntax error / tree syntax in a chunk
+
+	private final ForkJoinPool pool;
+	private final int chunkChars;
+	private final ResultFormatter formatter;
+	private final Evaluator treeEvaluator; // For expressions with tree syntax
+
+	/**
+	 * Uses the common ForkJoin pool, 64 KB chunks and 3 decimals.
+	 */
+	public ParallelEvaluator() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_CHARS, new ResultFormatter(3));
+	}
+
+	/**
+	 * @param pool       pool the chunk tasks run in
+	 * @param chunkChars preferred chunk length in characters
+	 * @param formatter  how the result is formatted
+	 */
+	public ParallelEvaluator(ForkJoinPool pool, int chunkChars, ResultFormatter formatter) {
+		if (pool == null || formatter == null || chunkChars < 1) {
+			throw new IllegalArgumentException("pool and formatter are required, chunkChars must be positive");
+		}
+		this.pool = pool;
+		this.chunkChars = chunkChars;
+		this.formatter = formatter;
+		this.treeEvaluator = new Evaluator(formatter, null);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java ParallelEvaluator <file> [threads] [chunkChars]");
+			System.exit(2);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int chunkChars = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_CHARS;
+		String expression = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8).trim();
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long start = System.nanoTime();
+			String result = new ParallelEvaluator(pool, chunkChars, new ResultFormatter(3)).evaluate(expression);
+			System.out.println(result);
+			System.err.printf("Evaluated %d characters in %.3f s%n", expression.length(),
+					(System.nanoTime() - start) / 1e9);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Evaluates an expression.
+	 *
+	 * @param expression the expression (e.g. "3+5*2")
+	 * @return formatted result string or error message
+	 */
+	public String evaluate(CharSequence expression) {
+		if (expression.length() == 0) {
+			return CalculatorError.SYNTAX_ERROR.getMessage();
+		}
+
+		int[] bounds = split(expression);
+		Partial total = pool.invoke(new ChunkTask(expression, bounds, 0, bounds.length - 1));
+
+		if (total.treeSyntaxAt < total.syntaxErrorAt) {
+			return treeEvaluator.computeTree(expression); // Evaluator's pass would stop there too
+		}
+		if (total.syntaxErrorAt != NONE) {
+			return CalculatorError.SYNTAX_ERROR.getMessage();
+		}
+		if (total.divideByZero) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		double result = total.value();
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		return formatter.format(result);
+	}
+
+	/**
+	 * Picks the chunk boundaries: chunk c is input[bounds[c], bounds[c+1]). Every
+	 * chunk but the first starts with the + or - that separates it from the one
+	 * before.
+	 */
+	private int[] split(CharSequence input) {
+		int length = input.length();
+		int[] bounds = new int[Math.max(2, length / chunkChars + 2)];
+		int count = 1; // bounds[0] = 0
+
+		int next = chunkChars;
+		while (next < length) {
+			int at = next;
+			while (at < length && !isAdditiveOperator(input, at)) {
+				at++;
+			}
+			if (at >= length) {
+				break;
+			}
+			bounds[count++] = at;
+			next = at + chunkChars;
+		}
+		bounds[count++] = length;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Checks whether input[i] is a + or a - that is an operator rather than the
+	 * sign of a number.
+	 */
+	private static boolean isAdditiveOperator(CharSequence input, int i) {
+		char c = input.charAt(i);
+		if (c == '+') {
+			return true;
+		}
+		return c == '-' && i > 0 && !CalculatorValidator.isOperator(input.charAt(i - 1));
+	}
+
+	/**
+	 * Folds input[start, end) the way Evaluator does, except that the finished
+	 * additive terms go into a compensated sum. If the chunk starts with + or -,
+	 * that is the operator before its first number. Stops at the first syntax
+	 * error or tree syntax and records where it was.
+	 */
+	private static Partial evaluateChunk(CharSequence input, int start, int end) {
+		Partial partial = new Partial();
+		char pendingOp = 0;
+		int numberStart = start;
+		if (start > 0) {
+			pendingOp = input.charAt(start);
+			numberStart = start + 1;
+		}
+
+		double term = 0;
+		boolean hasTerm = false;
+		boolean skipped = false;
+
+		for (int i = numberStart; i <= end; i++) {
+			char c = i < end ? input.charAt(i) : 0;
+
+			if (i < end) {
+				if (Character.isDigit(c) || c == '.'
+						|| (c == '-' && (i == 0 || CalculatorValidator.isOperator(input.charAt(i - 1))))) {
+					continue;
+				}
+				if (!CalculatorValidator.isOperator(c)) {
+					if (ExpressionTree.isTreeSyntax(input, i)) {
+						partial.treeSyntaxAt = i;
+						return partial;
+					}
+					skipped = true;
+					continue;
+				}
+			}
+
+			double number = Evaluator.parseNumber(input, numberStart, i, skipped);
+			if (DecimalParser.isMalformed(number)) {
+				partial.syntaxErrorAt = i; // Also covers an operator at the very end
+				return partial;
+			}
+
+			switch (pendingOp) {
+			case '*':
+				term *= number;
+				break;
+			case '/':
+				if (number == 0) {
+					partial.divideByZero = true;
+				} else {
+					term /= number;
+				}
+				break;
+			default:
+				if (hasTerm) {
+					partial.add(term);
+				}
+				term = pendingOp == '-' ? -number : number;
+				hasTerm = true;
+				break;
+			}
+
+			pendingOp = c;
+			numberStart = i + 1;
+			skipped = false;
+		}
+
+		partial.add(term);
+		return partial;
+	}
+
+	/**
+	 * A compensated sum: the true sum of the added values is close to sum +
+	 * compensation, much closer than sum alone.
+	 */
+	private static class Partial {
+		double sum;
+		double compensation;
+		boolean empty = true;
+		int syntaxErrorAt = NONE; // Index of the first syntax error
+		int treeSyntaxAt = NONE; // Index of the first parenthesis, ^ or function
+		boolean divideByZero;
+
+		/**
+		 * Neumaier's variant of Kahan summation, which also keeps the error when the
+		 * value is larger than the sum.
+		 */
+		void add(double value) {
+			if (empty) {
+				sum = value; // Not 0 + value, which would turn -0 into 0
+				empty = false;
+				return;
+			}
+			double t = sum + value;
+			if (Math.abs(sum) >= Math.abs(value)) {
+				compensation += (sum - t) + value;
+			} else {
+				compensation += (value - t) + sum;
+			}
+			sum = t;
+		}
+
+		double value() {
+			return compensation == 0 ? sum : sum + compensation;
+		}
+
+		/**
+		 * Adds another partial sum, keeping the rounding error of adding the two sums.
+		 */
+		Partial combine(Partial other) {
+			add(other.sum);
+			compensation += other.compensation;
+			syntaxErrorAt = Math.min(syntaxErrorAt, other.syntaxErrorAt);
+			treeSyntaxAt = Math.min(treeSyntaxAt, other.treeSyntaxAt);
+			divideByZero |= other.divideByZero;
+			return this;
+		}
+	}
+
+	/**
+	 * Evaluates chunks [from, to), splitting the range in halves so the partial
+	 * sums are combined pairwise.
+	 */
+	private static class ChunkTask extends RecursiveTask<Partial> {
+		private static final long serialVersionUID = 1L;
+
+		private final CharSequence input;
+		private final int[] bounds;
+		private final int from;
+		private final int to;
+
+		ChunkTask(CharSequence input, int[] bounds, int from, int to) {
+			this.input = input;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Partial compute() {
+			if (to - from == 1) {
+				return evaluateChunk(input, bounds[from], bounds[to]);
+			}
+			int middle = (from + to) >>> 1;
+			ChunkTask left = new ChunkTask(input, bounds, from, middle);
+			left.fork();
+			Partial right = new ChunkTask(input, bounds, middle, to).compute();
+			return left.join().combine(right);
+		}
+	}
+}
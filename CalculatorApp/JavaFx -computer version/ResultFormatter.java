@@ -0,0 +1,98 @@
+import java.util.Locale;
+
+/**
+ * ResultFormatter writes a double with a fixed number of decimals, giving
+ * exactly the same text as String.format("%.Nf", value) but with '.' as the
+ * decimal separator whatever the default locale is.
+ *
+ * Most values are formatted with plain long arithmetic straight into the
+ * caller's StringBuilder, without building a Formatter or any temporary
+ * objects. Values that are too large for that, and values that lie so close to
+ * a rounding boundary that the double and its printed digits could round
+ * differently, are handed to String.format, so the output never changes.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class ResultFormatter {
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+			10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+			10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L };
+
+	// Above this, scaled values no longer have a fractional part to round
+	private static final double MAX_FAST_SCALED = 9007199254740992.0; // 2^53
+
+	private final int decimals;
+	private final long scale; // 10^decimals
+	private final String pattern; // Equivalent String.format pattern, for the slow path
+
+	/**
+	 * @param decimals number of digits after the decimal point (0 to 15)
+	 */
+	public ResultFormatter(int decimals) {
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+		}
+		this.decimals = decimals;
+		this.scale = POWERS_OF_TEN[decimals];
+		this.pattern = "%." + decimals + "f";
+	}
+
+	public int getDecimals() {
+		return decimals;
+	}
+
+	/**
+	 * Formats a value into a new String.
+	 *
+	 * @param value the value to format
+	 * @return the formatted value (e.g. "-12.500")
+	 */
+	public String format(double value) {
+		return format(value, new StringBuilder(24)).toString();
+	}
+
+	/**
+	 * Appends a formatted value to a StringBuilder. Nothing is allocated unless
+	 * the value needs the slow path (see class comment).
+	 *
+	 * @param value the value to format
+	 * @param out   where the text is appended
+	 * @return out
+	 */
+	public StringBuilder format(double value, StringBuilder out) {
+		double magnitude = Math.abs(value);
+		double scaled = magnitude * scale;
+
+		// NaN fails this test too
+		if (!(scaled < MAX_FAST_SCALED)) {
+			return out.append(String.format(Locale.ROOT, pattern, value));
+		}
+
+		long whole = (long) scaled;
+		double fraction = scaled - whole; // Exact, since scaled < 2^53
+
+		// The printed digits of a double can sit on the other side of x.5 than its
+		// exact value only within a couple of ulps of it; leave those to Formatter
+		if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+			return out.append(String.format(Locale.ROOT, pattern, value));
+		}
+
+		long rounded = fraction > 0.5 ? whole + 1 : whole;
+
+		// Formatter keeps the sign of negative values that round to zero ("-0.000")
+		if (Double.doubleToRawLongBits(value) < 0) {
+			out.append('-');
+		}
+		out.append(rounded / scale);
+
+		if (decimals > 0) {
+			out.append('.');
+			long digits = rounded % scale;
+			for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+				out.append((char) ('0' + digits / divisor % 10));
+			}
+		}
+		return out;
+	}
+}
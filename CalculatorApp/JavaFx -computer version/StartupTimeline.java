@@ -0,0 +1,92 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * StartupTimeline records when the desktop app reaches each step of its
+ * startup, from JVM start to the first button the user presses, and prints
+ * the steps with their offsets once that first press is marked.
+ *
+ * Recording is off unless {@link #enable()} is called (MyProject does that for
+ * --startup-timeline or -Dcalculator.startupTimeline=true); while off, every
+ * call returns at once. Each step is recorded the first time it is marked.
+ * Thread-safe.
+ */
+public final class StartupTimeline {
+
+	public static final String MAIN = "main";
+	public static final String FX_START = "JavaFX start";
+	public static final String SCENE_BUILT = "scene built";
+	public static final String STAGE_SHOWN = "stage shown";
+	public static final String FIRST_FRAME = "first frame";
+	public static final String WARMUP_DONE = "engine warmed up";
+	public static final String FIRST_KEYSTROKE = "first keystroke";
+
+	private static final int MAX_STEPS = 16;
+
+	private static volatile boolean enabled = false;
+	private static final String[] steps = new String[MAX_STEPS];
+	private static final long[] nanos = new long[MAX_STEPS];
+	private static int count = 0;
+	private static long mainMillis; // Wall clock when MAIN was marked, to place it after JVM start
+
+	private StartupTimeline() {
+	}
+
+	public static void enable() {
+		enabled = true;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Records that startup reached the given step, unless it was recorded already.
+	 * Marking {@link #FIRST_KEYSTROKE} prints the timeline to System.err.
+	 */
+	public static void mark(String step) {
+		if (!enabled) {
+			return;
+		}
+		long now = System.nanoTime();
+		synchronized (StartupTimeline.class) {
+			for (int i = 0; i < count; i++) {
+				if (steps[i].equals(step)) {
+					return;
+				}
+			}
+			if (count == MAX_STEPS) {
+				return;
+			}
+			if (count == 0) {
+				mainMillis = System.currentTimeMillis();
+			}
+			steps[count] = step;
+			nanos[count] = now;
+			count++;
+		}
+		if (FIRST_KEYSTROKE.equals(step)) {
+			print(System.err);
+		}
+	}
+
+	/**
+	 * Prints every recorded step with its time since JVM start and since the step
+	 * before it.
+	 */
+	public static synchronized void print(PrintStream out) {
+		if (count == 0) {
+			return;
+		}
+		// Only the first step is placed against the JVM start; the rest use nanoTime
+		double first = mainMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+		out.println("Startup timeline (ms since JVM start):");
+		out.printf("  %-18s %9.1f%n", "JVM start", 0.0);
+		double previous = 0;
+		for (int i = 0; i < count; i++) {
+			double at = first + (nanos[i] - nanos[0]) / 1e6;
+			out.printf("  %-18s %9.1f  (+%.1f)%n", steps[i], at, at - previous);
+			previous = at;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * StreamingEvaluator evaluates one expression while reading it from a Reader or
+ * a channel, so it never has to be held in memory as a whole. Only the running
+ * sum, the pending * / term and the characters of the number being read are
+ * kept, which makes memory use independent of the expression's length.
+ *
+ * The rules are those of {@link Evaluator}: * and / before + and -, a '-' at
+ * the start or right after an operator is a sign, other characters (including
+ * line breaks) are ignored. Reading stops at the first syntax error.
+ *
+ * Parentheses, ^ and functions are not supported: they need the whole
+ * expression, which this class never holds. Reading stops at the first of them
+ * with a syntax error, where {@link Evaluator} would switch to its
+ * {@link ExpressionTree}.
+ *
+ * Instances hold no per-call state and can be shared between threads.
+ *
+ * Usage: java StreamingEvaluator &lt;file&gt;
+ */
+public class StreamingEvaluator {
+
+	private static final int BUFFER_CHARS = 64 * 1024;
+
+	private final ResultFormatter formatter;
+
+	/**
+	 * @param formatter how the result is formatted
+	 */
+	public StreamingEvaluator(ResultFormatter formatter) {
+		if (formatter == null) {
+			throw new IllegalArgumentException("formatter must not be null");
+		}
+		this.formatter = formatter;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java StreamingEvaluator <file>");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+			System.out.println(new StreamingEvaluator(new ResultFormatter(3)).evaluate(channel));
+		}
+		System.err.printf("Evaluated in %.3f s%n", (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Reads UTF-8 text from the channel until its end and evaluates it. The channel
+	 * is not closed.
+	 *
+	 * @return formatted result string or error message
+	 */
+	public String evaluate(ReadableByteChannel channel) throws IOException {
+		return evaluate(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_CHARS));
+	}
+
+	/**
+	 * Reads the reader until its end and evaluates what it read. The reader is not
+	 * closed.
+	 *
+	 * @return formatted result string or error message
+	 */
+	public String evaluate(Reader reader) throws IOException {
+		char[] buffer = new char[BUFFER_CHARS];
+		StringBuilder number = new StringBuilder(); // Characters of the number being read
+		Fold fold = new Fold();
+		boolean first = true; // Nothing read yet
+		char previous = 0;
+		StringBuilder ignored = new StringBuilder(); // The last few of a run of ignored characters
+
+		int read;
+		while ((read = reader.read(buffer)) >= 0) {
+			for (int i = 0; i < read; i++) {
+				char c = buffer[i];
+				boolean sign = c == '-' && (first || CalculatorValidator.isOperator(previous));
+				first = false;
+				previous = c;
+
+				if (Character.isDigit(c) || c == '.' || sign) {
+					number.append(c);
+					ignored.setLength(0);
+					continue;
+				}
+				if (!CalculatorValidator.isOperator(c)) {
+					if (ignored.length() == ExpressionTree.MAX_FUNCTION_NAME) {
+						ignored.deleteCharAt(0);
+					}
+					ignored.append(c);
+					if (c == '(' || c == ')' || c == '^' || ExpressionTree.endsWithFunction(ignored)) {
+						return CalculatorError.SYNTAX_ERROR.getMessage();
+					}
+					continue; // Ignored, as Evaluator ignores it
+				}
+				ignored.setLength(0);
+
+				if (!fold.add(number)) {
+					return CalculatorError.SYNTAX_ERROR.getMessage();
+				}
+				number.setLength(0);
+				fold.pendingOp = c;
+			}
+		}
+
+		// The last number; empty input or a trailing operator leave it empty
+		if (!fold.add(number)) {
+			return CalculatorError.SYNTAX_ERROR.getMessage();
+		}
+		if (fold.divideByZero) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		double result = fold.hasSum ? fold.sum + fold.term : fold.term;
+		if (CalculatorValidator.isResultInvalid(result)) {
+			return CalculatorError.MATH_ERROR.getMessage();
+		}
+		return formatter.format(result);
+	}
+
+	/**
+	 * The running state: everything that is kept of the input read so far.
+	 */
+	private static class Fold {
+		double sum; // Sum of the finished additive terms
+		boolean hasSum;
+		double term; // The term being multiplied / divided
+		char pendingOp; // Operator before the current number (0 for the first)
+		boolean divideByZero;
+
+		/**
+		 * Folds in the next number.
+		 *
+		 * @return false if the number is malformed
+		 */
+		boolean add(CharSequence number) {
+			double value = DecimalParser.parse(number, 0, number.length());
+			if (DecimalParser.isMalformed(value)) {
+				return false;
+			}
+
+			switch (pendingOp) {
+			case '*':
+				term *= value;
+				break;
+			case '/':
+				if (value == 0) {
+					divideByZero = true; // Reported once the whole input is known to be valid
+				} else {
+					term /= value;
+				}
+				break;
+			default:
+				if (pendingOp != 0) {
+					sum = hasSum ? sum + term : term;
+					hasSum = true;
+				}
+				term = pendingOp == '-' ? -value : value;
+				break;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vector API half of {@link ColumnExpression}: runs its steps over as many
+ * rows at a time as the CPU's widest vector holds. Lives in its own directory,
+ * which is compiled with --add-modules jdk.incubator.vector; ColumnExpression
+ * loads it by name and only when the module is present.
+ */
+final class ColumnVectorKernel implements ColumnKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public int loopBound(int rows) {
+		return SPECIES.loopBound(rows);
+	}
+
+	@Override
+	public void evaluateBlock(byte[] steps, int[] slots, boolean[] negate, double[] constants, double[][] columns,
+			int base, int length, double[] term, double[] sum, double[] out, long[] errors) {
+		int lanes = SPECIES.length();
+		load(slots[0], negate[0], constants[0], columns, base, length, term);
+		boolean hasSum = false;
+
+		for (int k = 1; k < steps.length; k++) {
+			int slot = slots[k];
+			switch (steps[k]) {
+			case ColumnExpression.MUL:
+				for (int j = 0; j < length; j += lanes) {
+					DoubleVector x = operand(slot, negate[k], constants[k], columns, base + j);
+					DoubleVector.fromArray(SPECIES, term, j).mul(x).intoArray(term, j);
+				}
+				break;
+			case ColumnExpression.DIV:
+				for (int j = 0; j < length; j += lanes) {
+					DoubleVector x = operand(slot, negate[k], constants[k], columns, base + j);
+					long zero = x.eq(0).toLong();
+					if (zero != 0) {
+						errors[(base + j) >>> 6] |= zero << (base + j);
+					}
+					DoubleVector.fromArray(SPECIES, term, j).div(x).intoArray(term, j);
+				}
+				break;
+			default:
+				if (hasSum) {
+					for (int j = 0; j < length; j += lanes) {
+						DoubleVector.fromArray(SPECIES, sum, j).add(DoubleVector.fromArray(SPECIES, term, j))
+								.intoArray(sum, j);
+					}
+				} else {
+					System.arraycopy(term, 0, sum, 0, length);
+					hasSum = true;
+				}
+				load(slot, negate[k], constants[k], columns, base, length, term);
+				break;
+			}
+		}
+
+		long laneBits = lanes == 64 ? -1L : (1L << lanes) - 1;
+		DoubleVector nan = DoubleVector.broadcast(SPECIES, Double.NaN);
+		for (int j = 0; j < length; j += lanes) {
+			int row = base + j;
+			DoubleVector result = DoubleVector.fromArray(SPECIES, term, j);
+			if (hasSum) {
+				result = DoubleVector.fromArray(SPECIES, sum, j).add(result);
+			}
+			long bits = result.test(VectorOperators.IS_FINITE).not().toLong()
+					| ((errors[row >>> 6] >>> row) & laneBits);
+			if (bits != 0) {
+				errors[row >>> 6] |= bits << row;
+				result = result.blend(nan, VectorMask.fromLong(SPECIES, bits));
+			}
+			result.intoArray(out, row);
+		}
+	}
+
+	/**
+	 * Copies operand k of rows [base, base+length) into target.
+	 */
+	private static void load(int slot, boolean negate, double constant, double[][] columns, int base, int length,
+			double[] target) {
+		if (slot < 0) {
+			Arrays.fill(target, 0, length, constant);
+		} else if (negate) {
+			for (int j = 0; j < length; j += SPECIES.length()) {
+				DoubleVector.fromArray(SPECIES, columns[slot], base + j).neg().intoArray(target, j);
+			}
+		} else {
+			System.arraycopy(columns[slot], base, target, 0, length);
+		}
+	}
+
+	private static DoubleVector operand(int slot, boolean negate, double constant, double[][] columns, int row) {
+		if (slot < 0) {
+			return DoubleVector.broadcast(SPECIES, constant);
+		}
+		DoubleVector x = DoubleVector.fromArray(SPECIES, columns[slot], row);
+		return negate ? x.neg() : x;
+	}
+}
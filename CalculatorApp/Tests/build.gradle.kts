@@ -0,0 +1,46 @@
+plugins {
+    java
+}
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+// The tests exercise the desktop copy of the engine, which also holds the
+// desktop-only evaluators. The JavaFX front end is left out, so no JavaFX SDK
+// is needed; the vector/ subdirectory (the vector API kernel) is picked up with
+// the rest, so the tests cover both column paths. Like the engine classes, the tests are in the default package.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../JavaFx -computer version"))
+            exclude("MyProject.java", "MyProjectController.java", "CalculatorView.java", "FontCache.java")
+        }
+    }
+}
+
+dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// vector/ColumnVectorKernel needs the incubator module to compile, and
+// ColumnExpression only loads it when the module is present. The sources
+// hold non-ASCII characters (e.g. en dashes), so they are read as UTF-8 whatever
+// the platform's default.
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+tasks.test {
+    useJUnitPlatform()
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * BatchOptimizer must give what {@link Evaluator} gives for every line, whether
+ * the line, its terms or neither were seen before in the batch.
+ */
+class BatchOptimizerTest {
+
+	private final Evaluator evaluator = new Evaluator();
+
+	@Test
+	void matchesEvaluatorOnEdgeCases() {
+		String[] expressions = { "", "5", "-5", "3+5*2", "10-4-3", "-2*-3--4", "8/2/2", "7/0", "0/0", "1-1*0/0",
+				"3+", "*3", "3*/2", "3**4", "3++4", "3*+4", "3+-", "1.2.3+4", "1/0*1.2.3", "5/0+3*", "2+3a",
+				"1 000/3", "-0", "0-0", "-0*5", "2*(3+4)", "2^3", "sqrt(16)+1", "1e308*10-1e308*10" };
+		BatchOptimizer optimizer = new BatchOptimizer(evaluator);
+		optimizer.startBatch();
+		for (int round = 0; round < 2; round++) { // The second time round, every line is known
+			for (String expression : expressions) {
+				assertEquals(evaluator.evaluate(expression), optimizer.evaluate(expression), expression);
+			}
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnLinesOfRepeatedTerms() {
+		Random random = new Random(42);
+		String[] terms = new String[50];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = RandomExpressions.number(random, true) + RandomExpressions.operator(random)
+					+ RandomExpressions.number(random, false);
+		}
+		BatchOptimizer optimizer = new BatchOptimizer(evaluator);
+		StringBuilder line = new StringBuilder();
+		for (int batch = 0; batch < 5; batch++) {
+			optimizer.startBatch();
+			for (int i = 0; i < 5 * BatchOptimizer.SAMPLE_LINES; i++) {
+				line.setLength(0);
+				for (int t = 1 + random.nextInt(5); t > 0; t--) {
+					if (line.length() > 0) {
+						line.append(random.nextBoolean() ? '+' : '-');
+					}
+					line.append(terms[random.nextInt(terms.length)]);
+				}
+				String expression = line.toString();
+				assertEquals(evaluator.evaluate(expression), optimizer.evaluate(expression), expression);
+			}
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnRandomLines() {
+		Random random = new Random(7);
+		BatchOptimizer optimizer = new BatchOptimizer(evaluator);
+		for (int batch = 0; batch < 5; batch++) {
+			optimizer.startBatch();
+			for (int i = 0; i < 5 * BatchOptimizer.SAMPLE_LINES; i++) {
+				String expression = RandomExpressions.flat(random, 1 + random.nextInt(6));
+				assertEquals(evaluator.evaluate(expression), optimizer.evaluate(expression), expression);
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The service must answer bad requests with an error status instead of running
+ * out of memory or dropping the connection.
+ */
+class CalculatorServerTest {
+
+	private File directory;
+	private HistoryTape history;
+	private CalculatorServer server;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		System.setProperty("calculator.maxBodyBytes", "1024");
+		directory = Files.createTempDirectory("history").toFile();
+		history = new HistoryTape(directory, 4096);
+		server = new CalculatorServer(0, new Evaluator(), history);
+		server.start();
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+		history.close();
+		System.clearProperty("calculator.maxBodyBytes");
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	void evaluatesABodyWithinTheLimit() throws IOException {
+		assertEquals("200 1.000\n4.000\n", post("/batch", "1\n2+2\n", true));
+	}
+
+	@Test
+	void answers413ToALargeBody() throws IOException {
+		String body = "1+1\n".repeat(1000);
+		assertEquals(413, status(post("/batch", body, true)));
+		assertEquals(413, status(post("/batch", body, false))); // Chunked, without Content-Length
+		assertEquals("200 2.000", post("/evaluate", "1+1", true)); // The service is still up
+	}
+
+	@Test
+	void answers400ToAMalformedQuery() throws IOException {
+		HttpURLConnection connection = open("/history?prefix=%zz");
+		assertEquals(400, connection.getResponseCode());
+		connection.disconnect();
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+	}
+
+	/**
+	 * @return the status and the response body, e.g. "200 2.000"
+	 */
+	private String post(String path, String body, boolean fixedLength) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		HttpURLConnection connection = open(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (fixedLength) {
+			connection.setFixedLengthStreamingMode(bytes.length);
+		} else {
+			connection.setChunkedStreamingMode(256);
+		}
+		try {
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(bytes);
+			}
+		} catch (IOException e) {
+			// The server may answer and close before the whole body is sent
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		if (in != null) {
+			try (InputStream stream = in) {
+				stream.transferTo(response);
+			}
+		}
+		connection.disconnect();
+		return status + " " + response.toString(StandardCharsets.UTF_8);
+	}
+
+	private static int status(String response) {
+		return Integer.parseInt(response.substring(0, 3));
+	}
+}
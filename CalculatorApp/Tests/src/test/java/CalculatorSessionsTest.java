@@ -0,0 +1,60 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sessions are created on demand, so their number must stay bounded.
+ */
+class CalculatorSessionsTest {
+
+	@Test
+	void endsTheLongestIdleSessionWhenFull() throws InterruptedException {
+		CalculatorSessions sessions = new CalculatorSessions(new Evaluator(), null, 3, 60_000);
+		sessions.userInput("a", "1");
+		Thread.sleep(1);
+		sessions.userInput("b", "2");
+		Thread.sleep(1);
+		sessions.userInput("c", "3");
+		Thread.sleep(1);
+		sessions.userInput("a", "4"); // b is now idle the longest
+		sessions.userInput("d", "5");
+
+		assertEquals(3, sessions.size());
+		assertFalse(sessions.contains("b"));
+		assertEquals("145", sessions.userInput("a", "5"));
+		assertEquals(1, sessions.getEvictions());
+	}
+
+	@Test
+	void makesRoomForManyNewSessionsAtOnce() {
+		CalculatorSessions sessions = new CalculatorSessions(new Evaluator(), null, 1000, 60_000);
+		for (int i = 0; i < 1000; i++) {
+			sessions.userInput("s" + i, "1");
+		}
+		sessions.userInput("new", "1");
+		long evicted = sessions.getEvictions();
+		assertTrue(evicted >= 20 && evicted <= 200, evicted + " evicted");
+
+		for (int i = 1; i < 20; i++) {
+			sessions.userInput("new" + i, "1");
+		}
+		assertEquals(evicted, sessions.getEvictions()); // No scan until the map is full again
+		assertTrue(sessions.contains("s999"));
+	}
+
+	@Test
+	void endsEveryIdleSessionWhenFull() throws InterruptedException {
+		CalculatorSessions sessions = new CalculatorSessions(new Evaluator(), null, 100, 0);
+		for (int i = 0; i < 100; i++) {
+			sessions.userInput("s" + i, "1");
+		}
+		Thread.sleep(1);
+		sessions.userInput("new", "1");
+
+		assertEquals(1, sessions.size());
+		assertTrue(sessions.contains("new"));
+		assertEquals(100, sessions.getEvictions());
+	}
+}
@@ -0,0 +1,60 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * CalculatorValidator must find an expression valid exactly when
+ * {@link Evaluator} does not report a Syntax Error for it.
+ */
+class CalculatorValidatorTest {
+
+	private final Evaluator evaluator = new Evaluator();
+
+	private void assertAgreesWithEvaluator(String expression) {
+		boolean syntaxError = evaluator.evaluate(expression).equals("Syntax Error");
+		assertEquals(syntaxError, CalculatorValidator.validate(expression) != CalculatorValidator.VALID, expression);
+	}
+
+	@Test
+	void agreesWithEvaluatorOnEdgeCases() {
+		String[] expressions = { "", "5", "-5", "3+5*2", "7/0", "3+", "*3", "3*/2", "5---3", "1.2.3+4", "2+-", ".",
+				"2+3a", "2*(3+4)", "2^3", "sqrt(16)+1", "2*(3", "2*3)", "sqrt 4", "5(2)", "2^", "1**2+(3)", "--abs(2)",
+				"1.2.(3)" };
+		for (String expression : expressions) {
+			assertAgreesWithEvaluator(expression);
+		}
+	}
+
+	@Test
+	void agreesWithEvaluatorOnRandomExpressions() {
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			assertAgreesWithEvaluator(RandomExpressions.flat(random, 1 + random.nextInt(10)));
+			assertAgreesWithEvaluator(RandomExpressions.tree(random, 1 + random.nextInt(6)));
+		}
+	}
+
+	@Test
+	void reportsTreeSyntaxThatDoesNotParseAtItsFirstCharacter() {
+		assertTree("2*(3", 2);
+		assertTree("1+sqrt 4", 2);
+		assertTree("5(2)", 1);
+		assertTree("2^", 1);
+	}
+
+	private static void assertTree(String expression, int position) {
+		long result = CalculatorValidator.validate(expression);
+		assertEquals(CalculatorValidator.INVALID_TREE_SYNTAX, CalculatorValidator.errorCode(result), expression);
+		assertEquals(position, CalculatorValidator.errorPosition(result), expression);
+	}
+
+	@Test
+	void acceptsFunctionNamesButNotOtherLettersWhenStrict() {
+		assertEquals(CalculatorValidator.VALID, CalculatorValidator.validate("abs(-2)*sqrt(4)^ln(1)", true));
+		long result = CalculatorValidator.validate("sqrt(4)+x1", true);
+		assertEquals(CalculatorValidator.UNRECOGNIZED_CHARACTER, CalculatorValidator.errorCode(result));
+		assertEquals(8, CalculatorValidator.errorPosition(result));
+	}
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Every row of a ColumnExpression must give what {@link Evaluator} gives for the
+ * template with that row's values written in, on the vector path (when the
+ * module is present) and on the plain loops alike.
+ */
+class ColumnExpressionTest {
+
+	private static final String[] NAMES = { "a", "b", "price", "fee_2" };
+	private static final int ROWS = 2500; // Two full blocks and a partial one
+	private static final String MATH_ERROR = "Math Error";
+
+	private final Evaluator evaluator = new Evaluator();
+	private final ResultFormatter formatter = new ResultFormatter(3);
+
+	@Test
+	void matchesEvaluatorOnRandomTemplates() {
+		Random random = new Random(42);
+		for (int t = 0; t < 200; t++) {
+			int terms = 1 + random.nextInt(8);
+			String[] operands = new String[terms];
+			char[] operators = new char[terms];
+			StringBuilder template = new StringBuilder();
+			for (int k = 0; k < terms; k++) {
+				if (k > 0) {
+					operators[k] = RandomExpressions.operator(random);
+					template.append(operators[k]);
+				}
+				operands[k] = random.nextInt(3) == 0 ? RandomExpressions.number(random, true)
+						: NAMES[random.nextInt(NAMES.length)];
+				template.append(operands[k]);
+			}
+			assertMatchesEvaluator(template.toString(), operands, operators, random);
+		}
+	}
+
+	@Test
+	void divisionByAZeroConstantIsAMathErrorInEveryRow() {
+		ColumnExpression expression = ColumnExpression.compile("a/0+1");
+		double[] out = new double[ROWS];
+		long[] errors = new long[ColumnExpression.maskLength(ROWS)];
+		assertEquals(ROWS, expression.evaluate(new double[][] { new double[ROWS] }, ROWS, out, errors));
+		assertTrue(ColumnExpression.isMathError(errors, ROWS - 1));
+		assertTrue(Double.isNaN(out[0]));
+	}
+
+	@Test
+	void listsVariablesInOrderOfFirstAppearance() {
+		assertArrayEquals(new String[] { "price", "qty", "fee" },
+				ColumnExpression.compile("price*qty-fee/qty").getVariables());
+	}
+
+	@Test
+	void rejectsInvalidTemplates() {
+		for (String template : new String[] { "", "a*", "*a", "a**b", "a+1.2.3" }) {
+			assertThrows(IllegalArgumentException.class, () -> ColumnExpression.compile(template), template);
+		}
+	}
+
+	private void assertMatchesEvaluator(String template, String[] operands, char[] operators, Random random) {
+		ColumnExpression expression = ColumnExpression.compile(template);
+		String[] variables = expression.getVariables();
+
+		// Each column's values as the calculator would show them, then parsed
+		Map<String, String[]> texts = new HashMap<>();
+		Map<String, double[]> columns = new HashMap<>();
+		for (String variable : variables) {
+			String[] text = new String[ROWS];
+			double[] column = new double[ROWS];
+			for (int row = 0; row < ROWS; row++) {
+				text[row] = RandomExpressions.number(random, true);
+				column[row] = Double.parseDouble(text[row]);
+			}
+			texts.put(variable, text);
+			columns.put(variable, column);
+		}
+
+		double[] out = new double[ROWS];
+		long[] errors = new long[ColumnExpression.maskLength(ROWS)];
+		int errorCount = expression.evaluate(columns, ROWS, out, errors);
+
+		int expectedErrors = 0;
+		double[] vars = new double[variables.length];
+		StringBuilder text = new StringBuilder();
+		for (int row = 0; row < ROWS; row++) {
+			text.setLength(0);
+			for (int k = 0; k < operands.length; k++) {
+				if (k > 0) {
+					text.append(operators[k]);
+				}
+				String[] column = texts.get(operands[k]);
+				text.append(column == null ? operands[k] : column[row]);
+			}
+			for (int v = 0; v < variables.length; v++) {
+				vars[v] = columns.get(variables[v])[row];
+			}
+
+			String expected = evaluator.evaluate(text);
+			boolean mathError = expected.equals(MATH_ERROR);
+			if (mathError) {
+				expectedErrors++;
+			}
+			String message = template + " with " + text;
+			assertEquals(mathError, ColumnExpression.isMathError(errors, row), message);
+			assertEquals(expected, mathError ? MATH_ERROR : formatter.format(out[row]), message);
+
+			double single = expression.evaluateRow(vars);
+			assertEquals(expected, CalculatorValidator.isResultInvalid(single) ? MATH_ERROR : formatter.format(single),
+					message + " (evaluateRow)");
+		}
+		assertEquals(expectedErrors, errorCount, template);
+	}
+}
@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * DecimalParser must return exactly what Double.parseDouble returns, and
+ * MALFORMED where it throws.
+ */
+class DecimalParserTest {
+
+	private static double parseDouble(String text) {
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			return DecimalParser.MALFORMED;
+		}
+	}
+
+	private static void assertParse(String text) {
+		// assertEquals(double, double) compares the bits, so -0.0 and 0.0 differ
+		assertEquals(parseDouble(text), DecimalParser.parse(text, 0, text.length()), "parse(\"" + text + "\")");
+	}
+
+	@Test
+	void parsesLikeParseDouble() {
+		String[] texts = { "0", "-0", "00012", "3.14", "-3.14", ".5", "-.5", "5.", "0.1", "0.3", "123456789012345678",
+				"1234567890123456789012", "9007199254740993", "0.000000000000000000000001", "1.7976931348623157",
+				"4.9e-324", "1e5", "+3", "2.5E-3", "Infinity", "0x1p3", " 7" };
+		for (String text : texts) {
+			assertParse(text);
+		}
+	}
+
+	@Test
+	void reportsMalformedNumbers() {
+		String[] texts = { "", "-", ".", "-.", "3.1.4", "--3", "3-", "1..2", "1e", "abc", "\u0663" };
+		for (String text : texts) {
+			assertTrue(DecimalParser.isMalformed(DecimalParser.parse(text, 0, text.length())), text);
+			assertParse(text);
+		}
+	}
+
+	@Test
+	void parsesRandomDecimalsLikeParseDouble() {
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 500_000; i++) {
+			text.setLength(0);
+			if (random.nextBoolean()) {
+				text.append('-');
+			}
+			int digits = 1 + random.nextInt(25);
+			int point = random.nextInt(digits + 2) - 1; // -1: no point
+			for (int d = 0; d < digits; d++) {
+				if (d == point) {
+					text.append('.');
+				}
+				text.append((char) ('0' + random.nextInt(10)));
+			}
+			assertParse(text.toString());
+		}
+	}
+
+	@Test
+	void parsesOnlyTheGivenRange() {
+		String expression = "12.5*-3.25+7";
+		assertEquals(12.5, DecimalParser.parse(expression, 0, 4));
+		assertEquals(-3.25, DecimalParser.parse(expression, 5, 10));
+		assertEquals(7.0, DecimalParser.parse(expression, 11, 12));
+	}
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The startup warmup types thousands of keys; none of them may reach the
+ * tracer (or CalculatorMetrics, which the same sessions skip).
+ */
+class EngineWarmupTest {
+
+	private final AtomicInteger stages = new AtomicInteger();
+
+	@AfterEach
+	void removeTracer() {
+		CalculatorLogic.setTracer(null);
+	}
+
+	@Test
+	void keepsItsSessionsOutOfTheTracer() {
+		CalculatorLogic.setTracer(new CalculatorTracer() {
+			@Override
+			public Object begin(int stage) {
+				stages.incrementAndGet();
+				return this;
+			}
+
+			@Override
+			public void end(Object span, int expressionLength, int tokenCount, String outcome) {
+			}
+		});
+
+		new EngineWarmup(3).run();
+		assertEquals(0, stages.get());
+
+		CalculatorLogic user = new CalculatorLogic();
+		user.userInput("1");
+		user.userInput("=");
+		assertTrue(stages.get() > 0);
+	}
+}
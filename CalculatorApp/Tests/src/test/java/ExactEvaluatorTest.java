@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ExactEvaluator must report the same errors as {@link Evaluator} and show the
+ * exact decimal result rounded half up. For results of moderate size that is at
+ * most one unit in the last shown digit away from Evaluator's.
+ */
+class ExactEvaluatorTest {
+
+	private final Evaluator evaluator = new Evaluator();
+	private final ExactEvaluator exact = new ExactEvaluator();
+
+	@Test
+	void showsTheExactResultWhereDoublesRoundTheOtherWay() {
+		assertEquals("17.274", evaluator.evaluate("43.1005-25.826"));
+		assertEquals("17.275", exact.evaluate("43.1005-25.826"));
+		assertEquals("0.300", exact.evaluate("0.1+0.2"));
+		assertEquals("1.000", exact.evaluate("1/3*3"));
+	}
+
+	@Test
+	void matchesEvaluatorOnErrors() {
+		String[] expressions = { "", "3+", "*3", "3*/2", "1.2.3+4", "7/0", "0/0", "5/0+3*", "1-1*0/0" };
+		for (String expression : expressions) {
+			assertEquals(evaluator.evaluate(expression), exact.evaluate(expression), expression);
+		}
+	}
+
+	@Test
+	void matchesBigDecimalOnRandomExpressions() {
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			text.setLength(0);
+			BigDecimal sum = BigDecimal.ZERO;
+			BigDecimal term = null;
+			boolean divideByZero = false;
+			int terms = 1 + random.nextInt(8);
+			for (int k = 0; k < terms; k++) {
+				char op = k == 0 ? '+' : RandomExpressions.operator(random);
+				String number = RandomExpressions.number(random, true);
+				if (k > 0) {
+					text.append(op);
+				}
+				text.append(number);
+
+				BigDecimal value = new BigDecimal(number);
+				switch (op) {
+				case '*':
+					term = term.multiply(value);
+					break;
+				case '/':
+					if (value.signum() == 0) {
+						divideByZero = true;
+					} else {
+						term = term.divide(value, MathContext.DECIMAL128);
+					}
+					break;
+				default:
+					if (term != null) {
+						sum = sum.add(term);
+					}
+					term = op == '-' ? value.negate() : value;
+					break;
+				}
+			}
+
+			String expression = text.toString();
+			String result = exact.evaluate(expression);
+			if (divideByZero) {
+				assertEquals(evaluator.evaluate(expression), result, expression);
+				continue;
+			}
+			BigDecimal expected = sum.add(term).setScale(3, RoundingMode.HALF_UP);
+			assertEquals(0, expected.compareTo(new BigDecimal(result)), expression + " gave " + result);
+			if (expected.abs().compareTo(BigDecimal.valueOf(1e9)) < 0) {
+				BigDecimal fromDoubles = new BigDecimal(evaluator.evaluate(expression));
+				assertTrue(expected.subtract(fromDoubles).abs().compareTo(new BigDecimal("0.001")) <= 0, expression);
+			}
+		}
+	}
+}
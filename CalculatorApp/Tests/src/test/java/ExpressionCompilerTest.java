@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A compiled expression must give what {@link Evaluator} gives for the template
+ * with the variable values written in, whether it became a hidden class or was
+ * too long for one method.
+ */
+class ExpressionCompilerTest {
+
+	private static final String MATH_ERROR = "Math Error";
+
+	private final Evaluator evaluator = new Evaluator();
+	private final ResultFormatter formatter = new ResultFormatter(3);
+
+	@Test
+	void matchesEvaluatorOnRandomTemplates() {
+		Random random = new Random(42);
+		for (int t = 0; t < 300; t++) {
+			assertMatchesEvaluator(1 + random.nextInt(12), random, 50);
+		}
+	}
+
+	@Test
+	void matchesEvaluatorWhenTooLongForOneMethod() {
+		// Over 65535 bytes of bytecode: falls back to ColumnExpression.evaluateRow
+		assertMatchesEvaluator(20_000, new Random(7), 3);
+	}
+
+	@Test
+	void cachesCompiledTemplatesUpToTheLimit() {
+		ExpressionCompiler compiler = new ExpressionCompiler(2);
+		ExpressionFunction first = compiler.get("a*b");
+		assertSame(first, compiler.get("a*b"));
+		compiler.get("a+b");
+		compiler.get("a-b"); // Evicts a*b, the least recently used
+		assertEquals(2, compiler.size());
+		assertNotSame(first, compiler.get("a*b"));
+		assertThrows(IllegalArgumentException.class, () -> compiler.get("a*/b"));
+	}
+
+	/**
+	 * Compiles a random template of variables x0, x1, ... and constants, and
+	 * compares it with Evaluator for random values.
+	 */
+	private void assertMatchesEvaluator(int terms, Random random, int rounds) {
+		List<String> operands = new ArrayList<>();
+		StringBuilder template = new StringBuilder();
+		char[] operators = new char[terms];
+		int variables = 0;
+		for (int k = 0; k < terms; k++) {
+			if (k > 0) {
+				operators[k] = RandomExpressions.operator(random);
+				template.append(operators[k]);
+			}
+			String operand = random.nextInt(3) == 0 ? RandomExpressions.number(random, true) : "x" + variables++;
+			operands.add(operand);
+			template.append(operand);
+		}
+		ExpressionFunction function = ExpressionCompiler.compile(ColumnExpression.compile(template.toString()));
+
+		double[] vars = new double[variables];
+		StringBuilder text = new StringBuilder();
+		for (int round = 0; round < rounds; round++) {
+			text.setLength(0);
+			int v = 0;
+			for (int k = 0; k < terms; k++) {
+				if (k > 0) {
+					text.append(operators[k]);
+				}
+				String operand = operands.get(k);
+				if (operand.startsWith("x")) {
+					operand = RandomExpressions.number(random, true);
+					vars[v++] = Double.parseDouble(operand);
+				}
+				text.append(operand);
+			}
+
+			double result = function.evaluate(vars);
+			String actual = CalculatorValidator.isResultInvalid(result) ? MATH_ERROR : formatter.format(result);
+			assertEquals(evaluator.evaluate(text), actual, terms > 100 ? "long template" : text.toString());
+		}
+	}
+}
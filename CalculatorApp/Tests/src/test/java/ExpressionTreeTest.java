@@ -0,0 +1,104 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ExpressionTree must parse the tree grammar with the usual precedence, and
+ * read flat expressions the way {@link Evaluator}'s single pass does.
+ */
+class ExpressionTreeTest {
+
+	private final ExpressionTree tree = new ExpressionTree();
+	private final Evaluator evaluator = new Evaluator();
+
+	private double valueOf(String expression) {
+		assertTrue(tree.parse(expression), expression);
+		return tree.evaluate();
+	}
+
+	@Test
+	void appliesPrecedenceAndAssociativity() {
+		assertEquals(8, valueOf("2^3"));
+		assertEquals(512, valueOf("2^3^2"));
+		assertEquals(-4, valueOf("-2^2"));
+		assertEquals(20, valueOf("(2+3)*4"));
+		assertEquals(14, valueOf("2+3*4"));
+		assertEquals(5, valueOf("sqrt(16)+1"));
+		assertEquals(3, valueOf("abs(-3)"));
+		assertEquals(0, valueOf("ln(1)"));
+		assertEquals(2, valueOf("8/2/2"));
+		assertEquals(98, valueOf("2*(3+sqrt(16))^2"));
+	}
+
+	@Test
+	void rejectsMalformedExpressions() {
+		String[] expressions = { "2*(3", "2*3)", "()", "sqrt 4", "5(2)", "2^", "^2", "sqrt()", "2**(3)" };
+		for (String expression : expressions) {
+			assertFalse(tree.parse(expression), expression);
+			assertEquals(0, tree.size(), expression);
+		}
+	}
+
+	@Test
+	void allowsOneSignPerOperandLikeTheSinglePass() {
+		String[][] pairs = { { "1+--2", "(1)+--2" }, { "--2", "(--2)" }, { "5---3", "(5)---3" } };
+		for (String[] pair : pairs) {
+			assertEquals("Syntax Error", evaluator.evaluate(pair[0]), pair[0]);
+			assertEquals("Syntax Error", evaluator.evaluate(pair[1]), pair[1]);
+		}
+		assertEquals("3.000", evaluator.evaluate("(1)--2"));
+		assertEquals("-2.000", evaluator.evaluate("-(-(-2))"));
+	}
+
+	@Test
+	void rejectsNestingBeyondTheLimit() {
+		assertTrue(tree.parse("(".repeat(400) + "1" + ")".repeat(400)));
+		assertFalse(tree.parse("(".repeat(10_000) + "1" + ")".repeat(10_000)));
+	}
+
+	@Test
+	void parsesLongPowerChainsWithoutRunningOutOfNesting() {
+		assertEquals(1, valueOf("1" + "^1".repeat(600)));
+		assertEquals(65536, valueOf("2^2^2^2^1".replace("^1", "^1" + "^1".repeat(600))));
+		assertEquals("1.000", evaluator.evaluate("1" + "^(1)".repeat(10_000)));
+		assertEquals(-16, valueOf("-2^2^2"));
+		assertEquals(Math.pow(2, -9), valueOf("2^-3^2"));
+	}
+
+	@Test
+	void readsFlatExpressionsLikeTheSinglePass() {
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			String expression = RandomExpressions.flat(random, 1 + random.nextInt(20));
+			assertEquals(evaluator.evaluate(expression), evaluator.computeTree(expression), expression);
+		}
+	}
+
+	@Test
+	void reusesItsArraysForTheNextExpression() {
+		Random random = new Random(7);
+		for (int i = 0; i < 1000; i++) {
+			String expression = RandomExpressions.tree(random, 1 + random.nextInt(8));
+			ExpressionTree fresh = new ExpressionTree();
+			boolean valid = fresh.parse(expression);
+			assertEquals(valid, tree.parse(expression), expression);
+			if (valid) {
+				assertEquals(fresh.evaluate(), tree.evaluate(), expression);
+			}
+		}
+	}
+
+	@Test
+	void findsFunctionNamesAtTheEndOfText() {
+		assertTrue(ExpressionTree.endsWithFunction("2+sqrt"));
+		assertTrue(ExpressionTree.endsWithFunction("abs"));
+		assertTrue(ExpressionTree.endsWithFunction(" ln"));
+		assertFalse(ExpressionTree.endsWithFunction("sqr"));
+		assertFalse(ExpressionTree.endsWithFunction("lnx"));
+		assertFalse(ExpressionTree.endsWithFunction(""));
+	}
+}
@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HistoryTape must keep its records across segments and reopening, and a
+ * session must keep calculating when its tape stops taking records.
+ */
+class HistoryTapeTest {
+
+	private File directory;
+
+	@BeforeEach
+	void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("history").toFile();
+	}
+
+	@AfterEach
+	void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	void readsRecordsBackNewestFirstAcrossSegmentsAndReopening() throws IOException {
+		try (HistoryTape tape = new HistoryTape(directory, 256)) {
+			for (int i = 0; i < 20; i++) {
+				tape.append(i, i + "*2", (i * 2) + ".000");
+			}
+		}
+		try (HistoryTape tape = new HistoryTape(directory, 256)) {
+			long expected = 19;
+			for (HistoryTape.Entry entry : tape.newestFirst()) {
+				assertEquals(expected + "*2", entry.getExpression());
+				expected--;
+			}
+			assertEquals(-1, expected);
+
+			List<HistoryTape.Entry> matches = tape.searchPrefix("1", 3);
+			assertEquals("19*2", matches.get(0).getExpression());
+			assertEquals(3, matches.size());
+		}
+	}
+
+	@Test
+	void reopensAfterACrashLeftTheNewestSegmentWithoutAHeader() throws IOException {
+		try (HistoryTape tape = new HistoryTape(directory, 256)) {
+			tape.append(1, "1+1", "2.000");
+		}
+		for (long length : new long[] { 0, 256 }) {
+			File blank = new File(directory, String.format("tape-%019d.seg", 2));
+			try (RandomAccessFile file = new RandomAccessFile(blank, "rw")) {
+				file.setLength(length);
+			}
+			try (HistoryTape tape = new HistoryTape(directory, 256)) {
+				tape.append(2, "2+2", "4.000");
+				Iterator<HistoryTape.Entry> entries = tape.newestFirst().iterator();
+				assertEquals("2+2", entries.next().getExpression());
+				assertEquals("1+1", entries.next().getExpression());
+			}
+			blank.delete();
+		}
+	}
+
+	@Test
+	void rejectsAppendsOnceClosed() throws IOException {
+		HistoryTape tape = new HistoryTape(directory, 256);
+		tape.append(1, "1+1", "2.000");
+		tape.close();
+		assertThrows(IllegalStateException.class, () -> tape.append(2, "2+2", "4.000"));
+		assertEquals("1+1", tape.newestFirst().iterator().next().getExpression());
+	}
+
+	@Test
+	void sessionKeepsCalculatingWithoutItsTape() throws IOException {
+		HistoryTape tape = new HistoryTape(directory, 256);
+		List<String> missing = new ArrayList<>();
+		tape.setFailureListener((expression, result, error) -> missing.add(expression + " = " + result));
+		CalculatorLogic logic = new CalculatorLogic(new Evaluator(), tape);
+		tape.close();
+
+		String display = "";
+		for (String key : new String[] { "1", "+", "2", "=", "*", "2", "=" }) {
+			display = logic.userInput(key);
+		}
+		assertEquals("3.000*2 = 6.000", display);
+		assertEquals(2, tape.getFailedAppends());
+		assertEquals(List.of("1+2 = 3.000", "3.000*2 = 6.000"), missing);
+	}
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ParallelEvaluator must give what {@link Evaluator} gives, whatever the chunk
+ * size, also for input with parentheses, ^ or functions. Its compensated sum may differ from Evaluator's plain sum in the last
+ * bits, so the random expressions here only have terms whose sums are exact:
+ * integers, small products and divisions by powers of two.
+ */
+class ParallelEvaluatorTest {
+
+	private static final int[] CHUNK_CHARS = { 1, 7, 64, 4096 };
+
+	private static ForkJoinPool pool;
+
+	private final Evaluator evaluator = new Evaluator();
+
+	@BeforeAll
+	static void startPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	static void stopPool() {
+		pool.shutdown();
+	}
+
+	private void assertMatchesEvaluator(String expression) {
+		String expected = evaluator.evaluate(expression);
+		for (int chunkChars : CHUNK_CHARS) {
+			ParallelEvaluator parallel = new ParallelEvaluator(pool, chunkChars, new ResultFormatter(3));
+			assertEquals(expected, parallel.evaluate(expression),
+					(expression.length() > 200 ? expression.length() + " chars" : expression) + ", chunks of "
+							+ chunkChars);
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnEdgeCases() {
+		String[] expressions = { "", "5", "-5", "3+5*2", "10-4-3", "-2*-3--4", "8/2/2", "7/0", "0/0", "1-1*0/0",
+				"3+", "*3", "3*/2", "1.2.3+4", "2+3a", "1a2+3", "5/0+3*", "-0", "0-0", "-0*5",
+				"1e308*10+1e308*10" };
+		for (String expression : expressions) {
+			assertMatchesEvaluator(expression);
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnRandomExpressions() {
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i++) {
+			assertMatchesEvaluator(exactExpression(random, 1 + random.nextInt(40)));
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnLongExpressions() {
+		Random random = new Random(7);
+		for (int i = 0; i < 5; i++) {
+			assertMatchesEvaluator(exactExpression(random, 50_000));
+		}
+	}
+
+	@Test
+	void handsTreeSyntaxToEvaluator() {
+		String[] expressions = { "2*(3+4)", "2^3^2", "-2^2", "sqrt(16)+1", "abs(-3)*ln(1)", "2*(3", "sqrt 4",
+				"5(2)", "1**2+(3)", "(3)+1**2", "1+2*3-4+sqrt(-1)", "1/0+(2)" };
+		for (String expression : expressions) {
+			assertMatchesEvaluator(expression);
+		}
+		Random random = new Random(3);
+		for (int i = 0; i < 500; i++) {
+			// A long flat start, so the first parenthesis is in a later chunk
+			String flat = exactExpression(random, 1 + random.nextInt(40));
+			String tree = "(" + RandomExpressions.tree(random, 1 + random.nextInt(5)) + ")";
+			assertMatchesEvaluator(random.nextBoolean() ? flat + "+" + tree : tree + "*" + flat);
+		}
+	}
+
+	@Test
+	void reportsTheFirstSyntaxErrorBeforeADivisionByZero() {
+		assertMatchesEvaluator("1/0+" + exactExpression(new Random(1), 1000) + "+2**3");
+	}
+
+	/**
+	 * @return an expression whose additive terms, and so all its partial sums, are
+	 *         exact in double; short ones sometimes divide by zero
+	 */
+	private static String exactExpression(Random random, int terms) {
+		int zeroDivisors = terms < 100 ? 10 : 0; // Per mille of the divisors
+		StringBuilder text = new StringBuilder();
+		for (int t = 0; t < terms; t++) {
+			if (t > 0) {
+				text.append(random.nextBoolean() ? '+' : '-');
+			}
+			if (random.nextInt(4) == 0) {
+				text.append('-');
+			}
+			text.append(random.nextInt(1000));
+			for (int factors = random.nextInt(4); factors > 0; factors--) {
+				if (random.nextBoolean()) {
+					text.append('*').append(random.nextInt(10));
+				} else {
+					text.append('/').append(random.nextInt(1000) < zeroDivisors ? 0 : 1 << random.nextInt(4));
+				}
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,72 @@
+import java.util.Random;
+
+/**
+ * Random inputs shared by the tests that compare an evaluator with
+ * {@link Evaluator}.
+ */
+final class RandomExpressions {
+
+	private static final char[] OPERATORS = { '+', '-', '*', '/' };
+
+	private RandomExpressions() {
+	}
+
+	/**
+	 * @return a decimal as the calculator shows it (e.g. "0", "42" or "-3.25"),
+	 *         zero about one time in ten
+	 */
+	static String number(Random random, boolean negative) {
+		if (random.nextInt(10) == 0) {
+			return negative && random.nextBoolean() ? "-0" : "0";
+		}
+		StringBuilder text = new StringBuilder();
+		if (negative && random.nextBoolean()) {
+			text.append('-');
+		}
+		text.append(random.nextInt(1000));
+		if (random.nextBoolean()) {
+			text.append('.').append(random.nextInt(100));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return a random + - * / operator
+	 */
+	static char operator(Random random) {
+		return OPERATORS[random.nextInt(OPERATORS.length)];
+	}
+
+	/**
+	 * @return a valid flat expression with the given number of terms, e.g.
+	 *         "3.25*-4+0.5/2-7"
+	 */
+	static String flat(Random random, int terms) {
+		StringBuilder text = new StringBuilder(number(random, true));
+		for (int i = 1; i < terms; i++) {
+			text.append(operator(random)).append(number(random, true));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return an expression that mixes + - * / with parentheses, ^ and the
+	 *         functions, and is not always valid (e.g. "2*(3-sqrt(4))^2")
+	 */
+	static String tree(Random random, int depth) {
+		switch (depth <= 0 ? 0 : random.nextInt(6)) {
+		case 0:
+			return number(random, false);
+		case 1:
+			return "(" + tree(random, depth - 1) + ")";
+		case 2:
+			return new String[] { "sqrt", "abs", "ln" }[random.nextInt(3)] + "(" + tree(random, depth - 1) + ")";
+		case 3:
+			return tree(random, depth - 1) + "^" + tree(random, depth - 1);
+		case 4:
+			return "-" + tree(random, depth - 1);
+		default:
+			return tree(random, depth - 1) + operator(random) + tree(random, depth - 1);
+		}
+	}
+}
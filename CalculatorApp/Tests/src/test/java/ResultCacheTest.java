@@ -0,0 +1,46 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * An Evaluator with a cache must give the same results as one without.
+ */
+class ResultCacheTest {
+
+	@Test
+	void doesNotShareResultsBetweenTextsThatReadDifferently() {
+		// The space makes the '-' an operator instead of a sign
+		Evaluator cached = new Evaluator(new ResultFormatter(3), new ResultCache(100, 10_000));
+		assertEquals("-15.000", cached.evaluate("3*-5"));
+		assertEquals(new Evaluator().evaluate("3* -5"), cached.evaluate("3* -5"));
+		assertEquals("Syntax Error", cached.evaluate("3* -5"));
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedEntry() {
+		ResultCache cache = new ResultCache(2, 1000);
+		cache.put("1+1", "2.000");
+		cache.put("2+2", "4.000");
+		cache.get("1+1");
+		cache.put("3+3", "6.000");
+		assertNull(cache.get("2+2"));
+		assertEquals("2.000", cache.get("1+1"));
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	void keepsEverySegmentWithinItsShareOfTheLimits() {
+		ResultCache cache = new ResultCache(100, 10_000, 4);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(Integer.toString(i), "x");
+			assertTrue(cache.size() <= 100, cache.toString());
+		}
+		assertEquals(1000 - cache.size(), cache.getEvictions());
+		assertEquals("x", cache.get("999")); // The newest entry of its segment
+		assertNull(cache.get("0"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * ResultFormatter must give exactly the text of String.format("%.Nf") in the
+ * root locale, on both its fast path and the values it hands to String.format.
+ */
+class ResultFormatterTest {
+
+	private static void assertFormat(ResultFormatter formatter, double value) {
+		String expected = String.format(Locale.ROOT, "%." + formatter.getDecimals() + "f", value);
+		assertEquals(expected, formatter.format(value), "format(" + value + ")");
+	}
+
+	@Test
+	void formatsLikeStringFormat() {
+		ResultFormatter formatter = new ResultFormatter(3);
+		double[] values = { 0, -0.0, 1, -1, 12.5, -12.5, 0.1 + 0.2, 1.0 / 3, -2.0 / 3, 999.9995, 1e15, -1e15, 1e300,
+				Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, 9007199254740.991, -0.0004, -0.0005, 0.0005 };
+		for (double value : values) {
+			assertFormat(formatter, value);
+		}
+	}
+
+	@Test
+	void formatsNonFiniteValuesLikeStringFormat() {
+		ResultFormatter formatter = new ResultFormatter(3);
+		assertFormat(formatter, Double.NaN);
+		assertFormat(formatter, Double.POSITIVE_INFINITY);
+		assertFormat(formatter, Double.NEGATIVE_INFINITY);
+	}
+
+	@Test
+	void roundsHalfwayValuesLikeStringFormat() {
+		// Decimal halfway cases are where the fast path has to defer to Formatter
+		ResultFormatter formatter = new ResultFormatter(3);
+		for (int i = 0; i < 100_000; i++) {
+			assertFormat(formatter, i / 1000.0 + 0.0005);
+			assertFormat(formatter, -(i / 1000.0 + 0.0005));
+			assertFormat(formatter, (2 * i + 1) / 2000.0);
+		}
+	}
+
+	@Test
+	void formatsRandomValuesForEveryPrecision() {
+		Random random = new Random(42);
+		for (int decimals = 0; decimals <= 15; decimals++) {
+			ResultFormatter formatter = new ResultFormatter(decimals);
+			for (int i = 0; i < 10_000; i++) {
+				assertFormat(formatter, (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 6));
+				assertFormat(formatter, Double.longBitsToDouble(random.nextLong()));
+			}
+		}
+	}
+
+	@Test
+	void appendsToTheGivenBuilder() {
+		StringBuilder out = new StringBuilder("= ");
+		new ResultFormatter(2).format(-3.14159, out);
+		assertEquals("= -3.14", out.toString());
+	}
+
+	@Test
+	void rejectsUnsupportedPrecision() {
+		assertThrows(IllegalArgumentException.class, () -> new ResultFormatter(-1));
+		assertThrows(IllegalArgumentException.class, () -> new ResultFormatter(16));
+	}
+}
@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * StreamingEvaluator must give what {@link Evaluator} gives, however the input
+ * is split into reads. Parentheses, ^ and functions are a syntax error for it.
+ */
+class StreamingEvaluatorTest {
+
+	private final Evaluator evaluator = new Evaluator();
+	private final StreamingEvaluator streaming = new StreamingEvaluator(new ResultFormatter(3));
+
+	private void assertMatchesEvaluator(String expression) throws IOException {
+		String expected = evaluator.evaluate(expression);
+		String message = expression.length() > 200 ? expression.length() + " chars" : expression;
+		assertEquals(expected, streaming.evaluate(new StringReader(expression)), message);
+		assertEquals(expected, streaming.evaluate(new TrickleReader(expression, 3)), message + " (3-char reads)");
+		assertEquals(expected, streaming.evaluate(
+				Channels.newChannel(new ByteArrayInputStream(expression.getBytes(StandardCharsets.UTF_8)))),
+				message + " (channel)");
+	}
+
+	@Test
+	void matchesEvaluatorOnEdgeCases() throws IOException {
+		String[] expressions = { "", "5", "-5", "3+5*2", "10-4-3", "-2*-3--4", "8/2/2", "7/0", "0/0", "1-1*0/0",
+				"3+", "*3", "3*/2", "1.2.3+4", "2+3a", "1a2+3", "5/0+3*", "-0", "0-0", "-0*5", "12\n+3\r\n*4",
+				"1 000 000/3", "0.1+0.2" };
+		for (String expression : expressions) {
+			assertMatchesEvaluator(expression);
+		}
+	}
+
+	@Test
+	void matchesEvaluatorOnRandomExpressions() throws IOException {
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			assertMatchesEvaluator(RandomExpressions.flat(random, 1 + random.nextInt(30)));
+		}
+	}
+
+	@Test
+	void rejectsTreeSyntax() throws IOException {
+		String[] expressions = { "2*(3+4)", "2^3", "sqrt(16)+1", "1+abs 2", "3*ln", "1+2)", "2*(3" };
+		for (String expression : expressions) {
+			assertEquals("Syntax Error", streaming.evaluate(new StringReader(expression)), expression);
+			assertEquals("Syntax Error", streaming.evaluate(new TrickleReader(expression, 1)), expression + " (1-char reads)");
+		}
+		Random random = new Random(3);
+		for (int i = 0; i < 500; i++) {
+			String expression = "(" + RandomExpressions.tree(random, 1 + random.nextInt(5)) + ")";
+			assertEquals("Syntax Error", streaming.evaluate(new TrickleReader(expression, 3)), expression);
+		}
+	}
+
+	@Test
+	void matchesEvaluatorAcrossBufferBoundaries() throws IOException {
+		// Longer than the 64K-char buffer, with no division so it is not a Math Error
+		Random random = new Random(7);
+		StringBuilder expression = new StringBuilder("1");
+		while (expression.length() < 200_000) {
+			expression.append(random.nextBoolean() ? '+' : '*').append(RandomExpressions.number(random, true));
+		}
+		assertMatchesEvaluator(expression.toString());
+	}
+
+	/**
+	 * Hands out at most a few characters per read.
+	 */
+	private static class TrickleReader extends Reader {
+		private final String text;
+		private final int maxRead;
+		private int position = 0;
+
+		TrickleReader(String text, int maxRead) {
+			this.text = text;
+			this.maxRead = maxRead;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (position == text.length()) {
+				return -1;
+			}
+			int count = Math.min(Math.min(length, maxRead), text.length() - position);
+			text.getChars(position, position + count, buffer, offset);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}